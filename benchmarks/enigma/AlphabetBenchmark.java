@@ -0,0 +1,77 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of character lookups in an Alphabet.  Times are per
+ *  lookup.
+ *  @author Osvaldo Valadez
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AlphabetBenchmark {
+
+    /** Number of characters looked up per invocation. */
+    static final int PROBES = 1024;
+
+    /** Size of the alphabet. */
+    @Param({"26", "64", "256"})
+    public int size;
+
+    /** Create the alphabet and the characters to look up, one in eight
+     *  of which are not in the alphabet. */
+    @Setup
+    public void setUp() {
+        String chars = Workload.alphabet(size);
+        _alphabet = new Alphabet(chars);
+        String others = Workload.alphabet(size + PROBES).substring(size);
+        Random random = new Random(size);
+        _probes = new char[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            _probes[i] = i % 8 == 7 ? others.charAt(random.nextInt(PROBES))
+                : chars.charAt(random.nextInt(size));
+        }
+    }
+
+    /** Look up the index of each probe. */
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void toInt(Blackhole sink) {
+        for (char c : _probes) {
+            sink.consume(_alphabet.toInt(c));
+        }
+    }
+
+    /** Check whether each probe is in the alphabet. */
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void contains(Blackhole sink) {
+        for (char c : _probes) {
+            sink.consume(_alphabet.contains(c));
+        }
+    }
+
+    /** The alphabet under test. */
+    private Alphabet _alphabet;
+
+    /** Characters to look up. */
+    private char[] _probes;
+}
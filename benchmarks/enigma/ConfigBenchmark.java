@@ -0,0 +1,70 @@
+package enigma;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of reading a machine configuration, as Main does at
+ *  startup, and of setting up the machine from a setting line, as Main
+ *  does for each message.
+ *  @author Osvaldo Valadez
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConfigBenchmark {
+
+    /** Size of the alphabet. */
+    @Param({"26", "64", "256"})
+    public int size;
+
+    /** Number of rotors of each kind in the configuration. */
+    @Param({"5", "50"})
+    public int rotors;
+
+    /** Generate the configuration and a setting line. */
+    @Setup
+    public void setUp() {
+        Workload workload = new Workload(size + rotors, size, 5, 3, rotors);
+        _config = workload.config();
+        _setting = workload.settingLine(size / 4);
+        _main = new Main(new Scanner(_config), null, null);
+        _machine = _main.readConfig();
+    }
+
+    /** Read the configuration. */
+    @Benchmark
+    public Machine readConfig() {
+        return new Main(new Scanner(_config), null, null).readConfig();
+    }
+
+    /** Set up the machine from the setting line. */
+    @Benchmark
+    public Machine setUpMachine() {
+        _main.setUp(_machine, _setting);
+        return _machine;
+    }
+
+    /** Text of the configuration, and a setting line for it. */
+    private String _config, _setting;
+
+    /** A Main that has read _config. */
+    private Main _main;
+
+    /** The machine configured by _main. */
+    private Machine _machine;
+}
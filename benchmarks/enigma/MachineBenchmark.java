@@ -0,0 +1,89 @@
+package enigma;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of encrypting whole messages with a Machine, by index and
+ *  by string.  Times are per message; divide by length for the time
+ *  per character.
+ *  @author Osvaldo Valadez
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MachineBenchmark {
+
+    /** Size of the alphabet. */
+    @Param({"26", "256"})
+    public int size;
+
+    /** Number of rotor slots; all but two have pawls. */
+    @Param({"5", "16"})
+    public int rotors;
+
+    /** Number of characters in the message. */
+    @Param({"64", "4096"})
+    public int length;
+
+    /** Create a machine from a generated configuration, set up by a
+     *  generated setting line, and a message to encrypt. */
+    @Setup
+    public void setUp() {
+        Workload workload =
+            new Workload(size + rotors, size, rotors, rotors - 2, rotors);
+        Main main = new Main(new Scanner(workload.config()), null, null);
+        _machine = main.readConfig();
+        main.setUp(_machine, workload.settingLine(size / 4));
+        _message = workload.message(length, Integer.MAX_VALUE)
+            .replaceAll("[ \n]", "");
+        _indices = _machine.alphabet().toInts(_message);
+        _settings = new int[rotors];
+        _machine.saveSettings(_settings);
+    }
+
+    /** Encrypt the message one index at a time from the same settings
+     *  each time. */
+    @Benchmark
+    public void convertInt(Blackhole sink) {
+        _machine.restoreSettings(_settings);
+        for (int c : _indices) {
+            sink.consume(_machine.convert(c));
+        }
+    }
+
+    /** Encrypt the message as a string from the same settings each
+     *  time. */
+    @Benchmark
+    public String convertString() {
+        _machine.restoreSettings(_settings);
+        return _machine.convert(_message);
+    }
+
+    /** The machine under test. */
+    private Machine _machine;
+
+    /** The message, and its alphabet indices. */
+    private String _message;
+
+    /** Alphabet indices of _message. */
+    private int[] _indices;
+
+    /** Rotor settings at the start of the message. */
+    private int[] _settings;
+}
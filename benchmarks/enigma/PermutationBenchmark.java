@@ -0,0 +1,78 @@
+package enigma;
+
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of applying a Permutation and its inverse.  Times are per
+ *  application.
+ *  @author Osvaldo Valadez
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PermutationBenchmark {
+
+    /** Number of indices permuted per invocation. */
+    static final int PROBES = 1024;
+
+    /** Size of the alphabet. */
+    @Param({"26", "64", "256"})
+    public int size;
+
+    /** Create the permutation, the first rotor wiring of a generated
+     *  configuration, and the indices to permute. */
+    @Setup
+    public void setUp() {
+        Machine machine = new Main(
+            new Scanner(new Workload(size, size, 2, 1, 1).config()),
+            null, null).readConfig();
+        _perm = machine.getAllRotors().iterator().next().permutation();
+        Random random = new Random(size);
+        _probes = new int[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            _probes[i] = random.nextInt(size);
+        }
+    }
+
+    /** Permute each probe. */
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void permute(Blackhole sink) {
+        for (int p : _probes) {
+            sink.consume(_perm.permute(p));
+        }
+    }
+
+    /** Apply the inverse permutation to each probe. */
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void invert(Blackhole sink) {
+        for (int p : _probes) {
+            sink.consume(_perm.invert(p));
+        }
+    }
+
+    /** The permutation under test. */
+    private Permutation _perm;
+
+    /** Indices to permute. */
+    private int[] _probes;
+}
@@ -0,0 +1,79 @@
+package enigma;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Main processing a whole generated input, from reading
+ *  the configuration to printing the last message, with the output
+ *  discarded.  Times are per input.
+ *  @author Osvaldo Valadez
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProcessBenchmark {
+
+    /** Size of the alphabet. */
+    @Param({"26", "256"})
+    public int size;
+
+    /** Number of rotor slots; all but two have pawls. */
+    @Param({"5", "16"})
+    public int rotors;
+
+    /** Number of characters in each message. */
+    @Param({"64", "65536"})
+    public int length;
+
+    /** Number of messages, each with its own setting line. */
+    @Param({"16"})
+    public int sections;
+
+    /** Generate the configuration and input. */
+    @Setup
+    public void setUp() {
+        Workload workload =
+            new Workload(size + rotors, size, rotors, rotors - 2, rotors);
+        _config = workload.config();
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < sections; i++) {
+            input.append(workload.settingLine(size / 4)).append('\n');
+            input.append(workload.message(length, LINE_GROUPS));
+        }
+        _input = input.toString();
+        _output = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    /** Process the input. */
+    @Benchmark
+    public void process() {
+        new Main(new Scanner(_config), new Scanner(_input), _output)
+            .process();
+    }
+
+    /** Number of five-character groups per message line. */
+    private static final int LINE_GROUPS = 12;
+
+    /** Text of the configuration and of the input. */
+    private String _config, _input;
+
+    /** Where output goes. */
+    private PrintStream _output;
+}
@@ -0,0 +1,83 @@
+package enigma;
+
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of passing signals through one moving Rotor in each
+ *  direction.  Times are per conversion.
+ *  @author Osvaldo Valadez
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RotorBenchmark {
+
+    /** Number of indices converted per invocation. */
+    static final int PROBES = 1024;
+
+    /** Size of the alphabet. */
+    @Param({"26", "64", "256"})
+    public int size;
+
+    /** Create the rotor, a moving rotor from a generated configuration
+     *  at a random setting, and the indices to convert. */
+    @Setup
+    public void setUp() {
+        Machine machine = new Main(
+            new Scanner(new Workload(size, size, 2, 1, 1).config()),
+            null, null).readConfig();
+        Random random = new Random(size);
+        for (Rotor rotor : machine.getAllRotors()) {
+            if (rotor.rotates()) {
+                _rotor = rotor;
+            }
+        }
+        _rotor.set(random.nextInt(size));
+        _probes = new int[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            _probes[i] = random.nextInt(size);
+        }
+    }
+
+    /** Convert each probe from right to left. */
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void convertForward(Blackhole sink) {
+        for (int p : _probes) {
+            sink.consume(_rotor.convertForward(p));
+        }
+    }
+
+    /** Convert each probe from left to right. */
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void convertBackward(Blackhole sink) {
+        for (int p : _probes) {
+            sink.consume(_rotor.convertBackward(p));
+        }
+    }
+
+    /** The rotor under test. */
+    private Rotor _rotor;
+
+    /** Indices to convert. */
+    private int[] _probes;
+}
@@ -62,6 +62,23 @@ class Alphabet {
         }
         return index;
     }
+    /** Returns the indices of the characters of TEXT that are in this
+     *  alphabet, in order, skipping the characters that are not. */
+    int[] toInts(String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (contains(c)) {
+                result[n] = toInt(c);
+                n += 1;
+            }
+        }
+        int[] trimmed = new int[n];
+        System.arraycopy(result, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
     /** Returns the char of what you are on @return String. */
     String chars() {
         return _chars;
@@ -0,0 +1,15 @@
+package enigma;
+
+/** A way of converting runs of characters with a Machine faster than
+ *  Machine.convert(int) can one at a time, made for the machine as it
+ *  was set up, and reading and leaving its rotor settings.
+ *  @author Osvaldo Valadez
+ */
+interface BulkConverter {
+
+    /** Convert INDICES[START .. END - 1], which are indices in the
+     *  alphabet, in place, as my machine would, starting from the
+     *  current settings of its rotors, and leave its rotors at their
+     *  final settings. */
+    void convert(int[] indices, int start, int end);
+}
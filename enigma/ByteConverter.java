@@ -0,0 +1,227 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+/** A snapshot of a Machine whose alphabet has 256 characters, laid out
+ *  for converting bytes in bulk.  The rotor tables, notches, settings,
+ *  and plugboard are copied into flat arrays, so that converting makes
+ *  no calls and indices wrap with a mask.  Only the two rightmost
+ *  rotors are applied one by one; the rest of the machine, up to and
+ *  including the reflector, is applied as a single table that is
+ *  rebuilt whenever one of its rotors moves, which is rare.  The
+ *  rightmost rotor, which moves at every step, is applied together with
+ *  the plugboard through a 256 x 256 table of bytes for each direction,
+ *  indexed by its setting and the input; at 64K bytes each, these stay
+ *  in cache.  Between the settings at which the rightmost rotor can
+ *  move its neighbor, nothing else moves, and bytes are converted by a
+ *  loop that does no other stepping.
+ *  @author Osvaldo Valadez
+ */
+class ByteConverter {
+
+    /** Size of an alphabet of bytes. */
+    static final int SIZE = 256;
+
+    /** A converter for MACHINE, whose alphabet has SIZE characters, in
+     *  its current settings. */
+    ByteConverter(Machine machine) {
+        _machine = machine;
+        Rotor[] rotors = machine.getRotors();
+        int n = rotors.length;
+        _last = n - 1;
+        _inner = Math.max(0, _last - 2);
+        _forward = new int[n * SIZE];
+        _inverse = new int[n * SIZE];
+        _notches = new boolean[n * SIZE];
+        _rotates = new boolean[n];
+        _posn = new int[n];
+        for (int x = 0; x < n; x++) {
+            System.arraycopy(rotors[x].forwardTable(), 0, _forward,
+                             x * SIZE, SIZE);
+            System.arraycopy(rotors[x].inverseTable(), 0, _inverse,
+                             x * SIZE, SIZE);
+            if (rotors[x].notchTable() != null) {
+                System.arraycopy(rotors[x].notchTable(), 0, _notches,
+                                 x * SIZE, SIZE);
+            }
+            _rotates[x] = rotors[x].rotates();
+            _posn[x] = rotors[x].setting();
+        }
+        int[] plugs = new int[SIZE];
+        Permutation plugboard = machine.getPlugboard();
+        for (int c = 0; c < SIZE; c++) {
+            plugs[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        int lastBase = _last * SIZE;
+        _in = new byte[SIZE * SIZE];
+        _out = new byte[SIZE * SIZE];
+        for (int p = 0; p < SIZE; p++) {
+            for (int c = 0; c < SIZE; c++) {
+                _in[p * SIZE + c] = (byte)
+                    (_forward[lastBase + ((plugs[c] + p) & MASK)] - p);
+                _out[p * SIZE + c] = (byte) plugs[
+                    (_inverse[lastBase + ((c + p) & MASK)] - p) & MASK];
+            }
+        }
+        _midForward = new int[SIZE];
+        _midInverse = new int[SIZE];
+        int midBase = (_last - 1) * SIZE;
+        for (int c = 0; c < SIZE; c++) {
+            _midForward[c] = _last >= 2 ? _forward[midBase + c] : c;
+            _midInverse[c] = _last >= 2 ? _inverse[midBase + c] : c;
+        }
+        _clear = new int[SIZE];
+        boolean pushes = _last >= 2 && _rotates[_last - 1];
+        for (int k = 2 * SIZE - 1; k >= 0; k--) {
+            int p = k & MASK;
+            if (pushes && _notches[lastBase + p]) {
+                _clear[p] = 0;
+            } else {
+                _clear[p] = Math.min(SIZE, 1 + _clear[(p + 1) & MASK]);
+            }
+        }
+        _cached = new int[SIZE];
+        composite();
+    }
+
+    /** Convert each remaining byte of BUFFER in place, as my machine
+     *  would, and leave its rotors at their final settings. */
+    void convert(ByteBuffer buffer) {
+        int step = _rotates[_last] ? 1 : 0;
+        int p = _posn[_last], q = _posn[_last - 1];
+        boolean quiet = quiet();
+        int i = buffer.position(), end = buffer.limit();
+        while (i < end) {
+            int run = quiet ? Math.min(_clear[p], end - i) : 0;
+            if (run > 0) {
+                convertRun(buffer, i, i + run, p, step, q);
+                p = (p + run * step) & MASK;
+                i += run;
+            } else {
+                _posn[_last] = p;
+                if (step() <= _inner) {
+                    composite();
+                }
+                quiet = quiet();
+                p = _posn[_last];
+                q = _posn[_last - 1];
+                int row = p * SIZE;
+                int c = _in[row + (buffer.get(i) & MASK)] & MASK;
+                c = (_midForward[(c + q) & MASK] - q) & MASK;
+                c = _cached[c];
+                c = (_midInverse[(c + q) & MASK] - q) & MASK;
+                buffer.put(i, _out[row + c]);
+                i += 1;
+            }
+        }
+        _posn[_last] = p;
+        Rotor[] rotors = _machine.getRotors();
+        for (int x = 1; x <= _last; x++) {
+            rotors[x].set(_posn[x]);
+        }
+    }
+
+    /** Convert bytes START .. END - 1 of BUFFER, during which only the
+     *  rightmost rotor moves, by STEP each time, from setting P, and the
+     *  one to its left stays at setting Q. */
+    private void convertRun(ByteBuffer buffer, int start, int end, int p,
+                            int step, int q) {
+        byte[] in = _in, out = _out;
+        int[] midForward = _midForward, midInverse = _midInverse;
+        int[] cached = _cached;
+        for (int i = start; i < end; i++) {
+            p = (p + step) & MASK;
+            int row = p * SIZE;
+            int c = in[row + (buffer.get(i) & MASK)] & MASK;
+            c = (midForward[(c + q) & MASK] - q) & MASK;
+            c = cached[c];
+            c = (midInverse[(c + q) & MASK] - q) & MASK;
+            buffer.put(i, out[row + c]);
+        }
+    }
+
+    /** Advance the settings of the rotors as Machine.move() does.
+     *  Returns the leftmost slot that moved, or _last + 1 if none
+     *  did. */
+    private int step() {
+        int leftmost = _last + 1;
+        for (int x = 1; x <= _last; x++) {
+            boolean pushed = x == _last
+                || _notches[(x + 1) * SIZE + _posn[x + 1]]
+                || (_rotates[x - 1] && _notches[x * SIZE + _posn[x]]);
+            if (_rotates[x] && pushed) {
+                _posn[x] = (_posn[x] + 1) & MASK;
+                leftmost = Math.min(leftmost, x);
+            }
+        }
+        return leftmost;
+    }
+
+    /** Return true iff no rotor in slots 1 .. _last - 2 is pushed by
+     *  the notch of its right neighbor, so that the next step moves at
+     *  most the two rightmost rotors. */
+    private boolean quiet() {
+        for (int x = 1; x <= _last - 2; x++) {
+            if (_rotates[x] && _notches[(x + 1) * SIZE + _posn[x + 1]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Fill in _cached with the mapping performed by the rotors in slots
+     *  0 .. _inner at their current settings, from the contacts on the
+     *  right of slot _inner through the reflector and back. */
+    private void composite() {
+        for (int c = 0; c < SIZE; c++) {
+            int d = c;
+            for (int x = _inner; x >= 0; x--) {
+                d = (_forward[x * SIZE + ((d + _posn[x]) & MASK)]
+                     - _posn[x]) & MASK;
+            }
+            for (int x = 1; x <= _inner; x++) {
+                d = (_inverse[x * SIZE + ((d + _posn[x]) & MASK)]
+                     - _posn[x]) & MASK;
+            }
+            _cached[c] = d;
+        }
+    }
+
+    /** Mask wrapping indices into the alphabet. */
+    private static final int MASK = SIZE - 1;
+
+    /** The machine I convert for. */
+    private final Machine _machine;
+
+    /** Slot of the rightmost rotor, and of the leftmost rotor applied one
+     *  by one, less one. */
+    private final int _last, _inner;
+
+    /** Forward and inverse tables of each slot, SIZE entries apiece. */
+    private final int[] _forward, _inverse;
+
+    /** Whether each slot is at a notch at each setting, SIZE entries
+     *  apiece. */
+    private final boolean[] _notches;
+
+    /** Whether each slot's rotor moves. */
+    private final boolean[] _rotates;
+
+    /** Current setting of each slot. */
+    private final int[] _posn;
+
+    /** Plugboard and rightmost rotor, inward and outward, indexed by the
+     *  rotor's setting times SIZE plus the input. */
+    private final byte[] _in, _out;
+
+    /** Tables of the rotor left of the rightmost one, or the identity if
+     *  that is the reflector. */
+    private final int[] _midForward, _midInverse;
+
+    /** Number of settings, starting at each setting of the rightmost
+     *  rotor, through which it steps without pushing its neighbor. */
+    private final int[] _clear;
+
+    /** Mapping through slots 0 .. _inner (see composite). */
+    private final int[] _cached;
+}
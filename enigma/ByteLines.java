@@ -0,0 +1,272 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** The lines of an input stream, delivered as ranges of bytes in a
+ *  buffer, with the same line breaks and the same idea of whether any
+ *  token remains as a Scanner reading the stream in charset CHARSET.
+ *  This is only possible while every byte stands for one character.
+ *  In ISO-8859-1 that is always so.  In UTF-8 and US-ASCII, it holds
+ *  only up to the first byte outside ASCII; from there on, the rest of
+ *  the stream is handed to a Scanner, and lines are delivered as text.
+ *  Unlike a Scanner, I report an error reading the stream, such as a
+ *  truncated compressed file, rather than taking it for the end.
+ *  @author Osvaldo Valadez
+ */
+class ByteLines {
+
+    /** Return true iff lines of a stream in CHARSET can be delivered as
+     *  bytes, at least until the first byte outside ASCII. */
+    static boolean handles(Charset charset) {
+        return charset.equals(StandardCharsets.ISO_8859_1)
+            || charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    /** Return the largest character value that stands for itself as a
+     *  single byte in CHARSET, which must be one that I handle. */
+    static int maxByteChar(Charset charset) {
+        return charset.equals(StandardCharsets.ISO_8859_1) ? BYTE_MASK
+            : ASCII_MAX;
+    }
+
+    /** The lines of IN, in CHARSET, which must be one that I handle.  If
+     *  STRICT, malformed input ends the input, as for a Scanner on a
+     *  File; otherwise it is replaced, as for a Scanner on an
+     *  InputStream. */
+    ByteLines(InputStream in, Charset charset, boolean strict) {
+        _in = in;
+        _charset = charset;
+        _strict = strict;
+        _latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+        _buf = new byte[BUFFER_SIZE];
+    }
+
+    /** Advance to the next line, as Scanner.nextLine would.  Throws
+     *  NoSuchElementException if there is none. */
+    void nextLine() {
+        _text = null;
+        if (_fallback != null) {
+            _text = _fallback.nextLine();
+            return;
+        }
+        int i = _pos;
+        int sep = -1;
+        while (sep < 0) {
+            for (; i < _limit; i++) {
+                int b = _buf[i] & BYTE_MASK;
+                if (b == '\n' || b == '\r' || (_latin1 && b == NEL)) {
+                    sep = b;
+                    break;
+                }
+                if (b > ASCII_MAX && !_latin1) {
+                    fallBack();
+                    _text = _fallback.nextLine();
+                    return;
+                }
+            }
+            if (sep < 0) {
+                if (_eof) {
+                    break;
+                }
+                i -= fill();
+            }
+        }
+        if (sep < 0 && i == _pos) {
+            throw new NoSuchElementException("No line found");
+        }
+        if (sep == '\r' && i + 1 == _limit && !_eof) {
+            i -= fill();
+        }
+        _start = _pos;
+        _end = i;
+        _pos = sep < 0 ? i : i + 1;
+        if (sep == '\r' && _pos < _limit && _buf[_pos] == '\n') {
+            _pos += 1;
+        }
+    }
+
+    /** Return true iff any character that is not whitespace remains
+     *  after the current line, as Scanner.hasNext would.  Invalidates
+     *  the bytes of the current line. */
+    boolean hasNext() {
+        if (_fallback != null) {
+            return fallbackHasNext();
+        }
+        int i = _pos;
+        while (true) {
+            for (; i < _limit; i++) {
+                int b = _buf[i] & BYTE_MASK;
+                if (b > ASCII_MAX && !_latin1) {
+                    fallBack();
+                    return fallbackHasNext();
+                }
+                if (!Character.isWhitespace(b)) {
+                    return true;
+                }
+            }
+            if (_eof) {
+                return false;
+            }
+            i -= fill();
+        }
+    }
+
+    /** Return true iff the current line is available only as text. */
+    boolean isText() {
+        return _text != null;
+    }
+
+    /** Return the current line as text. */
+    String text() {
+        if (_text != null) {
+            return _text;
+        }
+        return new String(_buf, _start, _end - _start, _charset);
+    }
+
+    /** Return the buffer holding the current line, if it is not text. */
+    byte[] buffer() {
+        return _buf;
+    }
+
+    /** Return the offset of the current line in buffer(). */
+    int start() {
+        return _start;
+    }
+
+    /** Return the offset just past the current line in buffer(). */
+    int end() {
+        return _end;
+    }
+
+    /** Return true iff the current line contains the character C,
+     *  which is in ASCII. */
+    boolean contains(char c) {
+        if (_text != null) {
+            return _text.indexOf(c) >= 0;
+        }
+        for (int i = _start; i < _end; i++) {
+            if (_buf[i] == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the number of bytes of the stream that precede the next
+     *  line, or -1 once lines are delivered as text. */
+    long offset() {
+        return _fallback != null ? -1 : _base + _pos;
+    }
+
+    /** Move the unread bytes to the front of the buffer, growing it if
+     *  it is full, and read more after them, noting the end of input.
+     *  Returns the distance by which the unread bytes moved. */
+    private int fill() {
+        int shift = _pos;
+        if (shift > 0) {
+            System.arraycopy(_buf, shift, _buf, 0, _limit - shift);
+            _limit -= shift;
+            _pos = 0;
+            _base += shift;
+        }
+        if (_limit == _buf.length) {
+            byte[] larger = new byte[2 * _buf.length];
+            System.arraycopy(_buf, 0, larger, 0, _limit);
+            _buf = larger;
+        }
+        try {
+            int n = _in.read(_buf, _limit, _buf.length - _limit);
+            if (n < 0) {
+                _eof = true;
+            } else {
+                _limit += n;
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        return shift;
+    }
+
+    /** Return _fallback.hasNext(), reporting any error it met reading
+     *  the stream. */
+    private boolean fallbackHasNext() {
+        boolean more = _fallback.hasNext();
+        if (!more && _fallback.ioException() != null) {
+            throw error("could not read input: %s",
+                        _fallback.ioException().getMessage());
+        }
+        return more;
+    }
+
+    /** Hand the unread bytes and the rest of the stream to _fallback. */
+    private void fallBack() {
+        InputStream rest = new SequenceInputStream(
+            new ByteArrayInputStream(_buf, _pos, _limit - _pos), _in);
+        if (_strict) {
+            _fallback = new Scanner(Channels.newChannel(rest),
+                                    _charset.name());
+        } else {
+            _fallback = new Scanner(rest, _charset.name());
+        }
+    }
+
+    /** Initial size of the buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Largest ASCII character. */
+    private static final int ASCII_MAX = 0x7f;
+
+    /** The next-line character, which Scanner takes as a line break. */
+    private static final int NEL = 0x85;
+
+    /** Source of bytes. */
+    private final InputStream _in;
+
+    /** Charset of the input. */
+    private final Charset _charset;
+
+    /** True iff malformed input ends the input. */
+    private final boolean _strict;
+
+    /** True iff the charset is ISO-8859-1, so that every byte is a
+     *  character. */
+    private final boolean _latin1;
+
+    /** Buffer of input bytes. */
+    private byte[] _buf;
+
+    /** Offset of the first unread byte in _buf, and of the end of the
+     *  bytes read. */
+    private int _pos, _limit;
+
+    /** Number of bytes of the stream that precede _buf. */
+    private long _base;
+
+    /** Offsets of the current line in _buf. */
+    private int _start, _end;
+
+    /** True iff the input has been read to its end. */
+    private boolean _eof;
+
+    /** The current line, if it was delivered as text. */
+    private String _text;
+
+    /** Scanner reading the rest of the input once bytes no longer
+     *  stand for characters, or null. */
+    private Scanner _fallback;
+}
@@ -0,0 +1,365 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+/** Byte mode of Main, used whenever every character of the alphabet is
+ *  a single byte in the charset: message lines are converted directly
+ *  from input bytes to output bytes, with no decoding or encoding of
+ *  characters, with the same results as Main.processChars.  Lines that
+ *  hold other characters are handed back to Main as text.  Each section
+ *  is converted by the engine Main chooses for it, unless shards are
+ *  being planned, in which case the machine is only stepped through
+ *  the messages (see Shards).
+ *  @author Osvaldo Valadez
+ */
+class ByteProcessor {
+
+    /** A processor for MAIN, whose machine is configured, run with
+     *  OPTIONS, writing to OUTPUT in CHARSET, and recording CHECKPOINTS.
+     *  Lines are checked by VERIFIER, unless it is null, and line
+     *  boundaries offered to PLANNER, unless it is null. */
+    ByteProcessor(Main main, Options options, PrintStream output,
+                  Charset charset, Checkpoints checkpoints,
+                  Verifier verifier, Shards planner) {
+        _main = main;
+        _alphabet = main.alphabet();
+        _indicators = options.indicators();
+        _end = options.end();
+        _output = output;
+        _checkpoints = checkpoints;
+        _verifier = verifier;
+        _planner = planner;
+        byteTables(charset);
+    }
+
+    /** Apply ENIGMA to the messages in INPUT, continuing from RESUME if
+     *  it is not null, where ENIGMA is already restored. */
+    void process(Machine enigma, ByteLines input, Checkpoint resume) {
+        try {
+            String next = null;
+            if (resume == null) {
+                input.nextLine();
+                next = input.text();
+            }
+            boolean ended = false;
+            while (!ended && (resume != null || input.hasNext())) {
+                String setting = resume == null ? next : resume.setting();
+                if (!setting.contains("*")) {
+                    throw new EnigmaException("Wrong setting format");
+                }
+                Metrics.Section event = new Metrics.Section();
+                event.begin();
+                if (resume == null || _indicators) {
+                    _main.setUp(enigma, setting);
+                    _main.saveGround(enigma);
+                    if (_verifier != null) {
+                        _verifier.section(setting);
+                    }
+                }
+                _converter = _planner == null ? _main.converter(enigma)
+                    : null;
+                long length = 0;
+                input.nextLine();
+                boolean first = resume == null;
+                resume = null;
+                while (true) {
+                    if (input.contains('*')) {
+                        next = first ? input.text()
+                            : input.text().toUpperCase();
+                        break;
+                    }
+                    length += _planner == null
+                        ? convertLine(enigma, input, first)
+                        : skipLine(enigma, input, first);
+                    first = false;
+                    if (!input.hasNext()) {
+                        next = "*";
+                        break;
+                    }
+                    long offset = input.offset();
+                    ended = _end >= 0 && offset >= 0
+                        && _checkpoints.start() + offset >= _end;
+                    if (ended) {
+                        break;
+                    }
+                    if (_planner != null && offset >= 0) {
+                        _planner.offer(enigma, _checkpoints.start() + offset,
+                                       setting);
+                    }
+                    _checkpoints.record(enigma, offset, setting);
+                    input.nextLine();
+                }
+                _main.metrics().sectionProcessed(length);
+                if (event.shouldCommit()) {
+                    event.setting = setting;
+                    event.length = length;
+                    event.commit();
+                }
+            }
+        } finally {
+            flush();
+        }
+    }
+
+    /** Write the bytes queued for output. */
+    void flush() {
+        if (_outLength > 0) {
+            _output.write(_outBytes, 0, _outLength);
+            _outLength = 0;
+        }
+    }
+
+    /** Fill in _byteIndex and _indexByte for _alphabet and CHARSET. */
+    private void byteTables(Charset charset) {
+        int max = ByteLines.maxByteChar(charset);
+        _byteIndex = new int[BYTE_VALUES];
+        _anySpecial = false;
+        for (int b = 0; b < BYTE_VALUES; b++) {
+            String upper = String.valueOf((char) b).toUpperCase();
+            if (b == ' ') {
+                _byteIndex[b] = SKIP;
+            } else if (b > max || upper.length() != 1) {
+                _byteIndex[b] = SPECIAL;
+                _anySpecial |= b <= max;
+            } else {
+                _byteIndex[b] = _alphabet.toInt(upper.charAt(0));
+            }
+        }
+        _indexByte = new byte[_alphabet.size()];
+        for (int i = 0; i < _alphabet.size(); i++) {
+            _indexByte[i] = (byte) _alphabet.toChar(i);
+        }
+        _separator = System.lineSeparator().getBytes(charset);
+    }
+
+    /** Convert the current line of INPUT, the FIRST after a setting line
+     *  if FIRST, with ENIGMA, and print the result in groups of five as
+     *  Main.processChars would.  Returns the number of characters
+     *  converted. */
+    private long convertLine(Machine enigma, ByteLines input,
+                             boolean first) {
+        byte[] buffer = input.buffer();
+        int start = input.start(), end = input.end();
+        boolean text = input.isText();
+        for (int i = start; _anySpecial && !text && i < end; i++) {
+            text = _byteIndex[buffer[i] & BYTE_MASK] == SPECIAL;
+        }
+        if (text) {
+            String line = input.text();
+            if (first && line.isEmpty()) {
+                line = " ";
+            }
+            String letters = line.replaceAll(" ", "").toUpperCase();
+            String result = _main.convertMessage(enigma, letters);
+            if (_verifier != null) {
+                verifyText(letters, result);
+            }
+            flush();
+            if (line.isEmpty()) {
+                _output.println();
+            } else {
+                _main.printMessageLine(result);
+            }
+            return result.length();
+        }
+        if (start == end) {
+            if (!first) {
+                putBytes(_separator, _separator.length);
+            }
+            return 0;
+        }
+        byte[] line = lineBuffer(2 * (end - start) + _separator.length);
+        int n = 0, k = 0;
+        if (_converter != null || _indicators || _verifier != null) {
+            int[] indices = indexBuffer(end - start);
+            for (int i = start; i < end; i++) {
+                int c = _byteIndex[buffer[i] & BYTE_MASK];
+                if (c != SKIP) {
+                    indices[k++] = c;
+                }
+            }
+            if (_verifier != null) {
+                _verifier.input(indices, k);
+            }
+            int from = _main.rekey(enigma, indices, k);
+            if (_converter != null) {
+                _converter.convert(indices, from, k);
+            } else {
+                for (int j = from; j < k; j++) {
+                    indices[j] = enigma.convert(indices[j]);
+                }
+            }
+            if (_verifier != null) {
+                _verifier.output(indices, from, k);
+            }
+            for (int j = from; j < k; j++) {
+                if (j > from && (j - from) % GROUP == 0) {
+                    line[n++] = ' ';
+                }
+                line[n++] = _indexByte[indices[j]];
+            }
+            k -= from;
+        }
+        for (int i = start;
+             _converter == null && !_indicators && _verifier == null
+                 && i < end;
+             i++) {
+            int c = _byteIndex[buffer[i] & BYTE_MASK];
+            if (c != SKIP) {
+                if (k > 0 && k % GROUP == 0) {
+                    line[n++] = ' ';
+                }
+                line[n++] = _indexByte[enigma.convert(c)];
+                k += 1;
+            }
+        }
+        if (k > 0) {
+            line[n++] = ' ';
+            System.arraycopy(_separator, 0, line, n, _separator.length);
+            n += _separator.length;
+        }
+        putBytes(line, n);
+        return k;
+    }
+
+    /** Advance ENIGMA past the current line of INPUT, the FIRST after a
+     *  setting line if FIRST, as convertLine would, but without
+     *  converting or printing anything.  Returns the number of
+     *  characters skipped.  In indicator mode, where every message sets
+     *  the rotors from its own indicator, the settings between messages
+     *  do not matter, and ENIGMA is left alone. */
+    private long skipLine(Machine enigma, ByteLines input, boolean first) {
+        byte[] buffer = input.buffer();
+        boolean text = input.isText();
+        long count = 0;
+        for (int i = input.start(); !text && i < input.end(); i++) {
+            int c = _byteIndex[buffer[i] & BYTE_MASK];
+            text = c == SPECIAL;
+            count += c == SKIP ? 0 : 1;
+        }
+        if (text) {
+            String line = input.text();
+            count = line.replaceAll(" ", "").toUpperCase().length();
+        }
+        if (_indicators) {
+            return Math.max(0, count - (enigma.numRotors() - 1));
+        }
+        enigma.advance(count);
+        return count;
+    }
+
+    /** Have _verifier check that LETTERS, a message line without blanks,
+     *  converted to RESULT, as for Main.convertMessage. */
+    private void verifyText(String letters, String result) {
+        int[] indices = new int[letters.length()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = _alphabet.toInt(letters.charAt(i));
+        }
+        _verifier.input(indices, indices.length);
+        int from = indices.length - result.length();
+        for (int i = 0; i < result.length(); i++) {
+            indices[from + i] = _alphabet.toInt(result.charAt(i));
+        }
+        _verifier.output(indices, from, indices.length);
+    }
+
+    /** Return _indices, after making it at least LENGTH long. */
+    private int[] indexBuffer(int length) {
+        if (_indices == null || _indices.length < length) {
+            _indices = new int[Math.max(length, BUFFER_SIZE)];
+        }
+        return _indices;
+    }
+
+    /** Return _lineBytes, after making it at least LENGTH long. */
+    private byte[] lineBuffer(int length) {
+        if (_lineBytes == null || _lineBytes.length < length) {
+            _lineBytes = new byte[Math.max(length, BUFFER_SIZE)];
+        }
+        return _lineBytes;
+    }
+
+    /** Queue the first N bytes of BYTES for output. */
+    private void putBytes(byte[] bytes, int n) {
+        if (_outLength + n > _outBytes.length) {
+            flush();
+        }
+        if (n > _outBytes.length) {
+            _output.write(bytes, 0, n);
+        } else {
+            System.arraycopy(bytes, 0, _outBytes, _outLength, n);
+            _outLength += n;
+        }
+    }
+
+    /** Values of _byteIndex other than alphabet indices. */
+    private static final int SKIP = -1, SPECIAL = -2;
+
+    /** Number of possible byte values. */
+    private static final int BYTE_VALUES = 256;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Number of characters in a printed group. */
+    private static final int GROUP = 5;
+
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The Main I convert for. */
+    private final Main _main;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** True iff each message line starts with an indicator. */
+    private final boolean _indicators;
+
+    /** Offset in the input file at which input ends, or -1 if it ends
+     *  at the end of the file. */
+    private final long _end;
+
+    /** Destination of converted messages. */
+    private final PrintStream _output;
+
+    /** Where progress is recorded. */
+    private final Checkpoints _checkpoints;
+
+    /** Checks message lines as they are converted, or null. */
+    private final Verifier _verifier;
+
+    /** Shards being planned, or null if not planning shards. */
+    private final Shards _planner;
+
+    /** Alphabet index of each input byte after conversion to upper case,
+     *  or SKIP for bytes that are dropped, or SPECIAL for bytes that
+     *  need processing as characters. */
+    private int[] _byteIndex;
+
+    /** Output byte for each alphabet index. */
+    private byte[] _indexByte;
+
+    /** True iff some byte that stands for a character is SPECIAL. */
+    private boolean _anySpecial;
+
+    /** Bytes of the line separator. */
+    private byte[] _separator;
+
+    /** Output bytes not yet written to _output. */
+    private final byte[] _outBytes = new byte[BUFFER_SIZE];
+
+    /** Number of bytes in _outBytes. */
+    private int _outLength;
+
+    /** Converter for the current section, or null to convert with the
+     *  machine directly. */
+    private BulkConverter _converter;
+
+    /** Buffer for the alphabet indices of one message line. */
+    private int[] _indices;
+
+    /** Buffer for the output of one message line. */
+    private byte[] _lineBytes;
+}
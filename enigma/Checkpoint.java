@@ -0,0 +1,181 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import static enigma.EnigmaException.*;
+
+/** A point from which a run of Main may be resumed: how far it had got
+ *  in its input and output files, and the complete state of its machine
+ *  (the rotors in its slots, their settings and ring settings, and the
+ *  plugboard).  In byte mode, it also records the setting line of the
+ *  section in progress, so that resuming needs nothing from earlier in
+ *  the input.  Checkpoints are stored as small property files, which
+ *  are replaced atomically.
+ *  @author Osvaldo Valadez
+ */
+class Checkpoint {
+
+    /** A checkpoint of MACHINE in its current state, having read INPUT
+     *  bytes of input and written OUTPUT bytes of output, in the section
+     *  set up by SETTING, or in raw mode if SETTING is null. */
+    Checkpoint(Machine machine, long input, long output, String setting) {
+        Rotor[] rotors = machine.getRotors();
+        _input = input;
+        _output = output;
+        _setting = setting;
+        _names = new String[rotors.length];
+        _settings = new int[rotors.length];
+        _rings = new int[rotors.length];
+        for (int i = 0; i < rotors.length; i++) {
+            _names[i] = rotors[i].name();
+            _settings[i] = rotors[i].setting();
+            _rings[i] = rotors[i].ring();
+        }
+        Permutation plugboard = machine.getPlugboard();
+        _plugboard = plugboard == null ? null : plugboard.getCycles();
+    }
+
+    /** A checkpoint read from PROPS. */
+    private Checkpoint(Properties props) {
+        try {
+            _input = Long.parseLong(props.getProperty("input"));
+            _output = Long.parseLong(props.getProperty("output"));
+            _setting = props.getProperty("setting");
+            _plugboard = props.getProperty("plugboard");
+            _names = props.getProperty("rotors").split(" ");
+            _settings = parseInts(props.getProperty("settings"));
+            _rings = parseInts(props.getProperty("rings"));
+        } catch (NullPointerException | NumberFormatException excp) {
+            throw error("malformed checkpoint");
+        }
+        if (_input < 0 || _output < 0 || _settings.length != _names.length
+            || _rings.length != _names.length) {
+            throw error("malformed checkpoint");
+        }
+    }
+
+    /** Return the checkpoint stored in the file named NAME, or null if
+     *  there is no such file. */
+    static Checkpoint read(String name) {
+        if (!Files.exists(Paths.get(name))) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (FileInputStream in = new FileInputStream(name)) {
+            props.load(in);
+        } catch (IOException | IllegalArgumentException excp) {
+            throw error("could not read checkpoint %s", name);
+        }
+        return new Checkpoint(props);
+    }
+
+    /** Store me in the file named NAME, replacing its previous contents
+     *  atomically: the new contents are written to a temporary file and
+     *  forced to disk, which is then renamed to NAME. */
+    void write(String name) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("input", Long.toString(_input));
+        props.setProperty("output", Long.toString(_output));
+        if (_setting != null) {
+            props.setProperty("setting", _setting);
+        }
+        if (_plugboard != null) {
+            props.setProperty("plugboard", _plugboard);
+        }
+        props.setProperty("rotors", String.join(" ", _names));
+        props.setProperty("settings", joinInts(_settings));
+        props.setProperty("rings", joinInts(_rings));
+        Path target = Paths.get(name);
+        Path temp = Paths.get(name + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            props.store(out, "enigma checkpoint");
+            out.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Delete the checkpoint file named NAME, if any. */
+    static void delete(String name) {
+        try {
+            Files.deleteIfExists(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not delete checkpoint %s", name);
+        }
+    }
+
+    /** Put MACHINE, which must be configured as the one I was taken
+     *  from, into the state I record. */
+    void restore(Machine machine) {
+        if (_names.length != machine.numRotors()) {
+            throw error("checkpoint is for a machine with %d rotors",
+                        _names.length);
+        }
+        machine.insertRotors(_names);
+        Rotor[] rotors = machine.getRotors();
+        for (int i = 1; i < rotors.length; i++) {
+            rotors[i].setRing(_rings[i]);
+            rotors[i].set(_settings[i]);
+        }
+        machine.setPlugboard(_plugboard == null ? null
+                             : PermutationRegistry.intern(
+                                 _plugboard, machine.alphabet()));
+    }
+
+    /** Return the number of input bytes read at this checkpoint. */
+    long input() {
+        return _input;
+    }
+
+    /** Return the number of output bytes written at this checkpoint. */
+    long output() {
+        return _output;
+    }
+
+    /** Return the setting line of the section in progress, or null if
+     *  this checkpoint was taken in raw mode. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return the integers separated by commas in S. */
+    private static int[] parseInts(String s) {
+        String[] fields = s.split(",");
+        int[] result = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            result[i] = Integer.parseInt(fields[i]);
+        }
+        return result;
+    }
+
+    /** Return VALUES separated by commas. */
+    private static String joinInts(int[] values) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            result.append(i == 0 ? "" : ",").append(values[i]);
+        }
+        return result.toString();
+    }
+
+    /** Bytes of input read and of output written. */
+    private final long _input, _output;
+
+    /** Setting line of the section in progress, or null in raw mode. */
+    private final String _setting;
+
+    /** Names of the rotors in each slot. */
+    private final String[] _names;
+
+    /** Setting and ring setting of the rotor in each slot. */
+    private final int[] _settings, _rings;
+
+    /** Cycles of the plugboard, or null if there is none. */
+    private final String _plugboard;
+}
@@ -0,0 +1,99 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import static enigma.EnigmaException.*;
+
+/** The checkpoints of a run of Main (see Checkpoint), recorded in a
+ *  file whenever enough input has been read since the last, so that a
+ *  run that stops can be resumed from the latest.  All output so far is
+ *  forced to disk before each is recorded, so that a checkpoint never
+ *  claims output that might be lost.
+ *  @author Osvaldo Valadez
+ */
+class Checkpoints {
+
+    /** Checkpoints recorded in the file named NAME, or not at all if
+     *  NAME is null, for a run writing to OUTPUT, whose buffered output
+     *  is written by FLUSH. */
+    Checkpoints(String name, FileOutputStream output, Runnable flush) {
+        _name = name;
+        _output = output;
+        _flush = flush;
+    }
+
+    /** Position INPUT and my output at the offsets recorded in
+     *  CHECKPOINT, discarding any output written after it. */
+    void seek(Checkpoint checkpoint, FileInputStream input) {
+        try {
+            FileChannel in = input.getChannel();
+            FileChannel out = _output.getChannel();
+            if (checkpoint.input() > in.size()
+                || checkpoint.output() > out.size()) {
+                throw error("files are shorter than checkpoint %s", _name);
+            }
+            in.position(checkpoint.input());
+            out.truncate(checkpoint.output());
+            _start = checkpoint.input();
+            _last = checkpoint.input();
+        } catch (IOException excp) {
+            throw error("could not resume from %s", _name);
+        }
+    }
+
+    /** Return the offset in the input file at which this run started
+     *  reading. */
+    long start() {
+        return _start;
+    }
+
+    /** Record a checkpoint, if at least INTERVAL bytes of input have
+     *  been read since the last, where this run has read READ bytes of
+     *  input (or an unknown number, if READ is negative), ENIGMA is in
+     *  its current state, and the section in progress was set up by
+     *  SETTING, or null in raw mode. */
+    void record(Machine enigma, long read, String setting) {
+        long input = _start + read;
+        if (_name == null || read < 0 || input - _last < INTERVAL) {
+            return;
+        }
+        _flush.run();
+        try {
+            FileChannel out = _output.getChannel();
+            out.force(false);
+            new Checkpoint(enigma, input, out.position(), setting)
+                .write(_name);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", _name);
+        }
+        _last = input;
+    }
+
+    /** Delete my file, once the run is complete. */
+    void finish() {
+        if (_name != null) {
+            Checkpoint.delete(_name);
+        }
+    }
+
+    /** Least number of input bytes between checkpoints. */
+    private static final long INTERVAL = 1 << 26;
+
+    /** Name of my file, or null. */
+    private final String _name;
+
+    /** The output file. */
+    private final FileOutputStream _output;
+
+    /** Writes buffered output. */
+    private final Runnable _flush;
+
+    /** Number of bytes of the input file skipped when resuming. */
+    private long _start;
+
+    /** Input offset of the last checkpoint recorded or resumed from. */
+    private long _last;
+}
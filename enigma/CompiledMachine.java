@@ -0,0 +1,299 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import static enigma.EnigmaException.*;
+
+/** A converter for a Machine by a class generated for its rotor order,
+ *  ring settings, and plugboard.  The generated code has the passes
+ *  through the rotors and the stepping of each slot unrolled, and
+ *  holds the size of the alphabet, the rotors' tables, their notch
+ *  tables, and whether each rotates, in static final fields, which the
+ *  JIT treats as constants: tests of rotors that do not rotate drop
+ *  out, and no rotor is reached through an array or a virtual call.
+ *
+ *  The source of the class depends only on the number of slots, and is
+ *  compiled once for each by the system Java compiler; each rotor order
+ *  then gets its own hidden class from the same bytes, with the tables
+ *  as its class data.  These classes are kept for the CACHE_SIZE orders
+ *  used most recently, and being hidden, may be unloaded once evicted.
+ *  A class must be run for a while before the JIT compiles it, so this
+ *  pays only when each rotor order converts long messages.
+ *  @author Osvaldo Valadez
+ */
+class CompiledMachine implements BulkConverter {
+
+    /** A converter for MACHINE, which must be set up, with its current
+     *  rotor order, ring settings, and plugboard. */
+    CompiledMachine(Machine machine) {
+        _machine = machine;
+        Rotor[] rotors = machine.getRotors();
+        int size = machine.alphabet().size();
+        int[] plugs = new int[size];
+        Permutation plugboard = machine.getPlugboard();
+        for (int c = 0; c < size; c++) {
+            plugs[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        List<Object> key = new ArrayList<>(Arrays.asList(rotors));
+        for (Rotor rotor : rotors) {
+            key.add(rotor.ring());
+        }
+        key.add(Arrays.toString(plugs));
+        synchronized (CONVERTERS) {
+            MethodHandle convert = CONVERTERS.get(key);
+            if (convert == null) {
+                convert = define(rotors, size, plugs);
+                CONVERTERS.put(key, convert);
+            }
+            _convert = convert;
+        }
+        _settings = new int[rotors.length];
+    }
+
+    @Override
+    public void convert(int[] indices, int start, int end) {
+        Rotor[] rotors = _machine.getRotors();
+        for (int x = 0; x < rotors.length; x++) {
+            _settings[x] = rotors[x].setting();
+        }
+        try {
+            _convert.invokeExact(indices, start, end, _settings);
+        } catch (RuntimeException | Error excp) {
+            throw excp;
+        } catch (Throwable excp) {
+            throw new IllegalStateException(excp);
+        }
+        for (int x = 1; x < rotors.length; x++) {
+            rotors[x].set(_settings[x]);
+        }
+    }
+
+    /** Return the convert method of a new class for ROTORS, with an
+     *  alphabet of SIZE characters and plugboard PLUGS. */
+    private static MethodHandle define(Rotor[] rotors, int size,
+                                       int[] plugs) {
+        int n = rotors.length;
+        Object[] data = new Object[SLOT_DATA + DATA_PER_SLOT * n];
+        data[0] = size;
+        data[1] = plugs.clone();
+        data[2] = repeat(plugs, 2);
+        boolean[] noNotches = new boolean[size];
+        for (int x = 0; x < n; x++) {
+            boolean[] notches = rotors[x].notchTable();
+            int k = SLOT_DATA + DATA_PER_SLOT * x;
+            data[k] = repeat(rotors[x].forwardTable(), 3);
+            data[k + 1] = repeat(rotors[x].inverseTable(), 3);
+            data[k + 2] = notches == null ? noNotches : notches.clone();
+            data[k + 3] = rotors[x].rotates();
+        }
+        try {
+            MethodHandles.Lookup generated = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes(n), data, true);
+            return generated.findStatic(generated.lookupClass(), "convert",
+                                        CONVERT_TYPE);
+        } catch (ReflectiveOperationException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Return TABLE repeated TIMES times over. */
+    private static int[] repeat(int[] table, int times) {
+        int[] result = new int[times * table.length];
+        for (int i = 0; i < times; i++) {
+            System.arraycopy(table, 0, result, i * table.length,
+                             table.length);
+        }
+        return result;
+    }
+
+    /** Return the class file for machines with N slots, compiling it if
+     *  need be. */
+    private static byte[] bytes(int n) {
+        synchronized (CLASSES) {
+            byte[] result = CLASSES.get(n);
+            if (result == null) {
+                result = compile(source(n));
+                CLASSES.put(n, result);
+            }
+            return result;
+        }
+    }
+
+    /** Return the source of the class for machines with N slots.  Its
+     *  convert(C, START, END, P) converts C[START .. END - 1] in place,
+     *  starting from the settings in P, which it updates. */
+    private static String source(int n) {
+        int last = n - 1;
+        StringBuilder out = new StringBuilder();
+        out.append("package enigma;\n")
+            .append("import java.lang.invoke.MethodHandles;\n")
+            .append("final class ").append(CLASS_NAME).append(" {\n")
+            .append("  private static final Object[] D = data();\n")
+            .append("  private static final int S = (Integer) D[0];\n")
+            .append("  private static final int[] P = (int[]) D[1];\n")
+            .append("  private static final int[] Q = (int[]) D[2];\n");
+        for (int x = 0; x < n; x++) {
+            int k = SLOT_DATA + DATA_PER_SLOT * x;
+            out.append(String.format(
+                "  private static final int[] F%1$d = (int[]) D[%2$d],"
+                + " I%1$d = (int[]) D[%3$d];%n"
+                + "  private static final boolean[] N%1$d ="
+                + " (boolean[]) D[%4$d];%n"
+                + "  private static final boolean R%1$d ="
+                + " (Boolean) D[%5$d];%n", x, k, k + 1, k + 2, k + 3));
+        }
+        out.append("  private static Object[] data() {\n")
+            .append("    try {\n")
+            .append("      return MethodHandles.classData(")
+            .append("MethodHandles.lookup(), \"_\", Object[].class);\n")
+            .append("    } catch (IllegalAccessException e) {\n")
+            .append("      throw new IllegalStateException(e);\n")
+            .append("    }\n")
+            .append("  }\n")
+            .append("  static void convert(int[] c, int start, int end,")
+            .append(" int[] p) {\n");
+        for (int x = 0; x < n; x++) {
+            out.append(String.format("    int p%1$d = p[%1$d];%n", x));
+        }
+        out.append("    for (int i = start; i < end; i++) {\n");
+        for (int x = 1; x <= last; x++) {
+            out.append(String.format("      boolean a%d = R%d", x, x));
+            if (x < last) {
+                out.append(String.format(" && (N%d[p%d]", x + 1, x + 1));
+                if (x >= 2) {
+                    out.append(String.format(" || R%d && N%d[p%d]",
+                                             x - 1, x, x));
+                }
+                out.append(")");
+            }
+            out.append(";\n");
+        }
+        for (int x = 1; x <= last; x++) {
+            out.append(String.format(
+                "      if (a%1$d && ++p%1$d == S) { p%1$d = 0; }%n", x));
+        }
+        out.append("      int k = P[c[i]];\n");
+        for (int x = last; x >= 0; x--) {
+            out.append(pass("F", x));
+        }
+        for (int x = 1; x <= last; x++) {
+            out.append(pass("I", x));
+        }
+        out.append("      c[i] = Q[k];\n")
+            .append("    }\n");
+        for (int x = 1; x <= last; x++) {
+            out.append(String.format("    p[%1$d] = p%1$d;%n", x));
+        }
+        out.append("  }\n")
+            .append("}\n");
+        return out.toString();
+    }
+
+    /** Return the source of the pass of k through table TABLE of slot X,
+     *  at the slot's setting, as for Rotor.convertForward.  Between
+     *  passes, k is kept in the range 0 .. 2 * S - 1 and taken modulo S,
+     *  so that with tables repeated three times over, no wrapping is
+     *  needed. */
+    private static String pass(String table, int x) {
+        return String.format("      k = %1$s%2$d[k + p%2$d] + S - p%2$d;%n",
+                             table, x);
+    }
+
+    /** Return the class file compiled from SOURCE, which defines
+     *  CLASS_NAME in this package. */
+    private static byte[] compile(String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw error("the compiled engine needs a Java compiler, which"
+                        + " this runtime lacks");
+        }
+        ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+        JavaFileObject input = new SimpleJavaFileObject(
+            URI.create("string:///" + CLASS_NAME + ".java"),
+            JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreErrors) {
+                return source;
+            }
+        };
+        JavaFileManager files = new ForwardingJavaFileManager<>(
+            compiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(
+                Location location, String name, JavaFileObject.Kind kind,
+                FileObject sibling) {
+                return new SimpleJavaFileObject(
+                    URI.create("bytes:///" + name), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return classFile;
+                    }
+                };
+            }
+        };
+        if (!compiler.getTask(null, files, null, List.of("-g:none"), null,
+                              List.of(input)).call()) {
+            throw new IllegalStateException("cannot compile:\n" + source);
+        }
+        return classFile.toByteArray();
+    }
+
+    /** Number of rotor orders whose classes are kept. */
+    private static final int CACHE_SIZE = 64;
+
+    /** Name of the generated classes, before the JVM adds the suffix
+     *  that makes each hidden class's name unique. */
+    private static final String CLASS_NAME = "CompiledRotors";
+
+    /** Index of the first entry of the class data for the slots. */
+    private static final int SLOT_DATA = 3;
+
+    /** Number of entries of the class data for each slot. */
+    private static final int DATA_PER_SLOT = 4;
+
+    /** Type of the generated convert methods. */
+    private static final MethodType CONVERT_TYPE =
+        MethodType.methodType(void.class, int[].class, int.class,
+                              int.class, int[].class);
+
+    /** Class files of the generated classes, by number of slots. */
+    private static final Map<Integer, byte[]> CLASSES = new HashMap<>();
+
+    /** The convert methods of the generated classes, by rotors, ring
+     *  settings, and plugboard, the least recently used first. */
+    private static final Map<List<Object>, MethodHandle> CONVERTERS =
+        new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<List<Object>, MethodHandle> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /** The machine I convert for. */
+    private final Machine _machine;
+
+    /** The convert method of my generated class. */
+    private final MethodHandle _convert;
+
+    /** Settings of my machine's rotors, passed to _convert. */
+    private final int[] _settings;
+}
@@ -0,0 +1,219 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Placement of a crib, a guessed piece of plaintext, against a
+ *  ciphertext, using the fact that a machine whose reflector has no
+ *  fixed points never converts a character to itself: the crib cannot
+ *  lie at any offset where one of its characters faces the same
+ *  character of the ciphertext.  For each distinct character of the
+ *  crib, the positions of that character in the ciphertext are kept as
+ *  a bit set, so that 64 offsets are tested at once by ORing together,
+ *  for each character of the crib, its bit set shifted by that
+ *  character's place in the crib.  The ciphertext is read in blocks,
+ *  so that its length is limited only by the disk.
+ *  @author Osvaldo Valadez
+ */
+public final class CribSearch {
+
+    /** Print the offsets at which a crib may lie against a ciphertext,
+     *  as specified by ARGS, where ARGS.length is 2 or 3.  ARGS[0] is
+     *  the name of a configuration file, ARGS[1] the crib, and ARGS[2]
+     *  the name of a file containing the ciphertext (default, the
+     *  standard input).  Offsets count only characters of the
+     *  ciphertext in the configured alphabet (after conversion to upper
+     *  case), from 0, and are printed in increasing order, one per
+     *  line. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw error("Only 2 or 3 command-line arguments allowed");
+            }
+            Main main = new Main(new Scanner(Main.readFile(args[0])),
+                                 null, null);
+            Machine machine = main.readConfig();
+            for (Rotor rotor : machine.getAllRotors()) {
+                checkReflector(rotor);
+            }
+            CribSearch search =
+                new CribSearch(machine.alphabet(), args[1]);
+            try (Reader in = new BufferedReader(new InputStreamReader(
+                     args.length > 2 ? new FileInputStream(args[2])
+                     : System.in), READ_SIZE)) {
+                search.search(in, System.out);
+            }
+            System.out.flush();
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read ciphertext: %s%n",
+                              excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Check that ROTOR, if it is a reflector, has no fixed points, as
+     *  crib placement assumes. */
+    private static void checkReflector(Rotor rotor) {
+        if (!(rotor instanceof Reflector)) {
+            return;
+        }
+        Permutation perm = rotor.permutation();
+        for (int c = 0; c < perm.size(); c++) {
+            if (perm.permute(c) == c) {
+                throw error("reflector %s maps %c to itself, so a"
+                            + " character may convert to itself",
+                            rotor.name(), perm.alphabet().toChar(c));
+            }
+        }
+    }
+
+    /** A search for CRIB in ciphertexts in ALPHABET.  Lower-case letters
+     *  in CRIB are taken as upper case. */
+    CribSearch(Alphabet alphabet, String crib) {
+        crib = crib.toUpperCase();
+        if (crib.isEmpty()) {
+            throw error("empty crib");
+        }
+        int[] direct = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(direct, -1);
+        for (int i = 0; i < alphabet.size(); i++) {
+            direct[alphabet.toChar(i)] = i;
+        }
+        _index = new int[direct.length];
+        for (int c = 0; c < direct.length; c++) {
+            _index[c] = direct[Character.toUpperCase((char) c)];
+        }
+        int[] slots = new int[alphabet.size()];
+        Arrays.fill(slots, -1);
+        _crib = new int[crib.length()];
+        int distinct = 0;
+        for (int j = 0; j < crib.length(); j++) {
+            int c = _index[crib.charAt(j)];
+            if (c < 0) {
+                throw error("crib character %c is not in the alphabet",
+                            crib.charAt(j));
+            }
+            if (slots[c] < 0) {
+                slots[c] = distinct;
+                distinct += 1;
+            }
+            _crib[j] = slots[c];
+        }
+        _slots = slots;
+        _capacity = BLOCK + _crib.length - 1;
+        _bits = new long[distinct][(_capacity >> LOG_WORD) + 2];
+    }
+
+    /** Read ciphertext from IN and print on OUT the offsets at which my
+     *  crib may lie, as for main.  Returns the number printed. */
+    long search(Reader in, PrintStream out) throws IOException {
+        char[] chars = new char[READ_SIZE];
+        long base = 0, found = 0;
+        int filled = 0;
+        for (int n = in.read(chars); n >= 0; n = in.read(chars)) {
+            for (int i = 0; i < n; i++) {
+                int c = _index[chars[i]];
+                if (c < 0) {
+                    continue;
+                }
+                int slot = _slots[c];
+                if (slot >= 0) {
+                    _bits[slot][filled >> LOG_WORD] |= 1L << filled;
+                }
+                filled += 1;
+                if (filled == _capacity) {
+                    found += report(base, BLOCK, out);
+                    shift();
+                    base += BLOCK;
+                    filled -= BLOCK;
+                }
+            }
+        }
+        return found + report(base, filled - _crib.length + 1, out);
+    }
+
+    /** Print on OUT the offsets BASE + K, for 0 <= K < COUNT, at which
+     *  my crib may lie, where the positions I hold start at BASE.
+     *  Returns the number printed. */
+    private long report(long base, int count, PrintStream out) {
+        StringBuilder text = new StringBuilder();
+        long found = 0;
+        for (int w = 0; w << LOG_WORD < count; w++) {
+            long clash = 0;
+            for (int j = 0; j < _crib.length; j++) {
+                clash |= word(_bits[_crib[j]], (w << LOG_WORD) + j);
+            }
+            long fits = ~clash;
+            int rest = count - (w << LOG_WORD);
+            if (rest < Long.SIZE) {
+                fits &= (1L << rest) - 1;
+            }
+            for (; fits != 0; fits &= fits - 1) {
+                long offset = base + (w << LOG_WORD)
+                    + Long.numberOfTrailingZeros(fits);
+                text.append(offset).append('\n');
+                found += 1;
+            }
+        }
+        out.append(text);
+        return found;
+    }
+
+    /** Return the 64 bits of BITS starting at bit POS. */
+    private static long word(long[] bits, int pos) {
+        int q = pos >> LOG_WORD, r = pos & (Long.SIZE - 1);
+        if (r == 0) {
+            return bits[q];
+        }
+        return (bits[q] >>> r) | (bits[q + 1] << (Long.SIZE - r));
+    }
+
+    /** Discard the first BLOCK positions I hold. */
+    private void shift() {
+        int words = BLOCK >> LOG_WORD;
+        for (long[] bits : _bits) {
+            System.arraycopy(bits, words, bits, 0, bits.length - words);
+            Arrays.fill(bits, bits.length - words, bits.length, 0);
+        }
+    }
+
+    /** Number of offsets tested per block of ciphertext; a multiple of
+     *  64. */
+    private static final int BLOCK = 1 << 20;
+
+    /** Base-2 logarithm of the number of bits in a long. */
+    private static final int LOG_WORD = 6;
+
+    /** Number of characters read at a time. */
+    private static final int READ_SIZE = 1 << 16;
+
+    /** Alphabet index of each character, after conversion to upper
+     *  case, or -1 if it is not in the alphabet. */
+    private final int[] _index;
+
+    /** Bit set number for each alphabet index, or -1 if the crib does
+     *  not contain it. */
+    private final int[] _slots;
+
+    /** Bit set number of each character of the crib. */
+    private final int[] _crib;
+
+    /** Number of positions held at once: a block of offsets, and the
+     *  positions the crib reaches past the last of them. */
+    private final int _capacity;
+
+    /** For each character of the crib, the positions, from the start of
+     *  the current block, at which it occurs in the ciphertext. */
+    private final long[][] _bits;
+}
@@ -0,0 +1,540 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog, after Rejewski's, of the cycle structure of the
+ *  permutations that link the two encipherments of doubled message
+ *  keys.  With K = numRotors() - 1 characters in a message key, each
+ *  message of a day starts with its key enciphered twice over at the
+ *  day's ground setting, by the permutations A(0) .. A(2K - 1) of
+ *  successive positions of the machine.  Indicator character I + K is
+ *  then the image of indicator character I under A(I + K) A(I), for I
+ *  < K, and given enough messages, these K permutations are known.
+ *  Their cycle types (the lengths of their cycles) do not depend on the
+ *  plugboard, which only relabels the cycles, so the cycle types alone
+ *  narrow the rotor order and ground setting down to a few candidates.
+ *
+ *  Building a catalog computes the signature, the K cycle types, of
+ *  every rotor order that the configuration allows at every ground
+ *  setting, with all ring settings 0, on as many threads as there are
+ *  processors.  The catalog file holds the settings grouped by
+ *  signature, the signatures ordered by a 64-bit hash of their text,
+ *  and is mapped into memory to look one up by binary search, so that a
+ *  lookup reads a handful of pages.  The file is a header of big-endian
+ *  ints: MAGIC, VERSION, the number of rotor slots, the alphabet size,
+ *  followed by the alphabet as 16-bit chars; then the number of chars
+ *  of the rotor orders and those chars, each order a line of rotor
+ *  names separated by blanks; then the number S of signatures and R of
+ *  settings; then S signature hashes as longs, ascending, the R
+ *  settings as longs (rotor order number times the number of ground
+ *  settings, plus the ground setting number), S + 1 ints giving where
+ *  each signature's settings start, S + 1 ints giving where each
+ *  signature's text starts, and the texts as 16-bit chars.
+ *  @author Osvaldo Valadez
+ */
+public final class CycleCatalog {
+
+    /** Build or consult a catalog, as specified by ARGS.  With ARGS
+     *  "build", CONFIG, CATALOG, catalog every machine that the
+     *  configuration file CONFIG allows into the file CATALOG.  With
+     *  ARGS "lookup", CATALOG, and optionally INDICATORS, read a day's
+     *  doubled indicators, separated by whitespace, from the file
+     *  INDICATORS (default, the standard input), print their signature,
+     *  and then the setting line of each rotor order and ground setting
+     *  with that signature. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 3 && args[0].equals("build")) {
+                long start = System.nanoTime();
+                int[] counts = build(Main.readFile(args[1]), args[2],
+                                     Runtime.getRuntime()
+                                     .availableProcessors());
+                System.err.printf("catalogued %d settings under %d"
+                                  + " signatures in %.1f s%n", counts[0],
+                                  counts[1],
+                                  (System.nanoTime() - start) / 1e9);
+            } else if ((args.length == 2 || args.length == 3)
+                       && args[0].equals("lookup")) {
+                CycleCatalog catalog = load(args[1]);
+                String indicators = args.length > 2
+                    ? Main.readFile(args[2])
+                    : new Scanner(System.in).useDelimiter("\\z").next();
+                String signature = catalog.signature(indicators);
+                System.out.println(signature);
+                for (String line : catalog.lookup(signature)) {
+                    System.out.println(line);
+                }
+            } else {
+                throw error("usage: build CONFIG CATALOG"
+                            + " | lookup CATALOG [INDICATORS]");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** First int of a catalog file. */
+    static final int MAGIC = 0x454e4359;
+
+    /** Version of the catalog format written by build(). */
+    static final int VERSION = 1;
+
+    /** Catalog every machine described by the configuration text CONFIG
+     *  into the file named NAME, using THREADS worker threads.  Returns
+     *  the number of settings catalogued and of distinct signatures. */
+    static int[] build(String config, String name, int threads) {
+        Machine machine = newMachine(config);
+        Alphabet alpha = machine.alphabet();
+        List<String[]> orders = KeySearch.rotorOrders(machine);
+        long positions = 1;
+        for (int i = 1; i < machine.numRotors(); i++) {
+            positions *= alpha.size();
+            if (positions * orders.size() > MAX_SETTINGS
+                || positions * alpha.size() > MAX_SETTINGS) {
+                throw error("too many settings to catalog");
+            }
+        }
+        if (orders.isEmpty()) {
+            throw error("configuration allows no rotor orders");
+        }
+        int perOrder = (int) positions;
+        int[][] found = new int[orders.size()][];
+        Map<String, Integer> ids = new ConcurrentHashMap<>();
+        List<String> texts = new ArrayList<>();
+        AtomicInteger nextOrder = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(pool.submit(() -> {
+                    catalogOrders(config, orders, perOrder,
+                                  nextOrder, found, ids, texts);
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("catalog interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("catalog failed: %s", excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        write(name, machine, orders, positions, found, texts);
+        return new int[] { (int) (positions * orders.size()), texts.size() };
+    }
+
+    /** Return the catalog saved by build() in the file named NAME, which
+     *  is mapped into memory rather than read. */
+    static CycleCatalog load(String name) {
+        MappedByteBuffer data;
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(name), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+                throw error("%s is not a cycle catalog", name);
+            }
+            return new CycleCatalog(name, data);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException excp) {
+            throw error("%s is truncated", name);
+        }
+    }
+
+    /** The catalog named NAME whose contents after the magic number and
+     *  version are the rest of DATA. */
+    private CycleCatalog(String name, ByteBuffer data) {
+        _numRotors = data.getInt();
+        char[] chars = new char[data.getInt()];
+        data.asCharBuffer().get(chars);
+        data.position(data.position() + 2 * chars.length);
+        _alphabet = new Alphabet(new String(chars));
+        char[] orders = new char[data.getInt()];
+        data.asCharBuffer().get(orders);
+        data.position(data.position() + 2 * orders.length);
+        _orders = new String(orders).split("\n");
+        int signatures = data.getInt(), settings = data.getInt();
+        _positions = 1;
+        for (int i = 1; i < _numRotors; i++) {
+            _positions *= _alphabet.size();
+        }
+        _hashes = slice(data, Long.BYTES * signatures).asLongBuffer();
+        _settings = slice(data, Long.BYTES * settings).asLongBuffer();
+        _starts = slice(data, Integer.BYTES * (signatures + 1))
+            .asIntBuffer();
+        _textStarts = slice(data, Integer.BYTES * (signatures + 1))
+            .asIntBuffer();
+        _texts = data.slice().asCharBuffer();
+        if (_textStarts.get(signatures) != _texts.capacity()
+            || _starts.get(signatures) != settings) {
+            throw error("%s is truncated", name);
+        }
+    }
+
+    /** Return the setting lines, with the rotor order and ground
+     *  setting, of the machines whose signature is SIGNATURE, as
+     *  returned by signature(). */
+    List<String> lookup(String signature) {
+        List<String> result = new ArrayList<>();
+        long hash = hash(signature);
+        int lo = 0, hi = _hashes.capacity();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_hashes.get(mid) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int s = lo; s < _hashes.capacity() && _hashes.get(s) == hash;
+             s++) {
+            CharSequence text = _texts.subSequence(_textStarts.get(s),
+                                                   _textStarts.get(s + 1));
+            if (!signature.contentEquals(text)) {
+                continue;
+            }
+            for (int i = _starts.get(s); i < _starts.get(s + 1); i++) {
+                long setting = _settings.get(i);
+                result.add(settingLine(_orders[(int) (setting / _positions)],
+                                       setting % _positions));
+            }
+        }
+        return result;
+    }
+
+    /** Return the signature determined by INDICATORS, a day's doubled
+     *  indicators separated by whitespace, in the form that lookup()
+     *  takes.  Lower-case letters are taken as upper case. */
+    String signature(String indicators) {
+        int k = _numRotors - 1, size = _alphabet.size();
+        int[][] links = new int[k][size];
+        for (int[] link : links) {
+            Arrays.fill(link, -1);
+        }
+        for (String indicator : indicators.toUpperCase().trim()
+                 .split("\\s+")) {
+            int[] c = _alphabet.toInts(indicator);
+            if (c.length != 2 * k || indicator.length() != 2 * k) {
+                throw error("indicator %s should have %d characters of"
+                            + " the alphabet", indicator, 2 * k);
+            }
+            for (int i = 0; i < k; i++) {
+                if (links[i][c[i]] >= 0 && links[i][c[i]] != c[i + k]) {
+                    throw error("indicator %s contradicts earlier ones",
+                                indicator);
+                }
+                links[i][c[i]] = c[i + k];
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < k; i++) {
+            for (int c = 0; c < size; c++) {
+                if (links[i][c] < 0) {
+                    throw error("indicators do not show where %c goes in"
+                                + " link %d; more messages are needed",
+                                _alphabet.toChar(c), i + 1);
+                }
+            }
+            if (i > 0) {
+                result.append(SEPARATOR);
+            }
+            appendCycleType(result, links[i], new boolean[size],
+                            new int[size]);
+        }
+        return result.toString();
+    }
+
+    /** Append to OUT the lengths of the cycles of PERM, longest first,
+     *  separated by blanks, using SEEN, all false, and COUNTS, all 0,
+     *  each with an entry per element of PERM, as scratch space.  Both
+     *  are left as they were. */
+    private static void appendCycleType(StringBuilder out, int[] perm,
+                                        boolean[] seen, int[] counts) {
+        for (int c = 0; c < perm.length; c++) {
+            if (!seen[c]) {
+                int length = 0;
+                for (int d = c; !seen[d]; d = perm[d]) {
+                    seen[d] = true;
+                    length += 1;
+                }
+                counts[length - 1] += 1;
+            }
+        }
+        String blank = "";
+        for (int length = perm.length; length > 0; length--) {
+            for (; counts[length - 1] > 0; counts[length - 1] -= 1) {
+                out.append(blank).append(length);
+                blank = " ";
+            }
+        }
+        Arrays.fill(seen, false);
+    }
+
+    /** Catalog the rotor orders of ORDERS handed out by NEXTORDER on a
+     *  private machine configured by CONFIG, at each of their POSITIONS
+     *  ground settings, storing in FOUND[ORDER] the signature number of
+     *  each ground setting.  Signatures are numbered in IDS as they are
+     *  first found, and their texts added to TEXTS.  The permutation
+     *  that converting from each setting applies, and the setting it
+     *  leaves, are computed once for each rotor order, so that the
+     *  signature of a ground setting costs only K compositions of the
+     *  2K permutations met from it. */
+    private static void catalogOrders(String config, List<String[]> orders,
+                                      int positions, AtomicInteger nextOrder,
+                                      int[][] found, Map<String, Integer> ids,
+                                      List<String> texts) {
+        Machine machine = newMachine(config);
+        int numRotors = machine.numRotors(), size = machine.alphabet().size();
+        int k = numRotors - 1;
+        int[] perms = new int[positions * size];
+        int[] next = new int[positions];
+        int[] settings = new int[numRotors];
+        int[] link = new int[size];
+        int[] met = new int[2 * k];
+        boolean[] seen = new boolean[size];
+        int[] counts = new int[size];
+        char[] zeros = new char[k];
+        Arrays.fill(zeros, machine.alphabet().toChar(0));
+        Map<String, Integer> known = new HashMap<>();
+        StringBuilder text = new StringBuilder();
+        for (int order = nextOrder.getAndIncrement(); order < orders.size();
+             order = nextOrder.getAndIncrement()) {
+            machine.insertRotors(orders.get(order));
+            machine.setRotors(new String(zeros));
+            for (int code = 0; code < positions; code++) {
+                int rest = code;
+                for (int i = k; i > 0; i--) {
+                    settings[i] = rest % size;
+                    rest /= size;
+                }
+                for (int c = 0; c < size; c++) {
+                    machine.restoreSettings(settings);
+                    perms[code * size + c] = machine.convert(c);
+                }
+                machine.saveSettings(settings);
+                int after = 0;
+                for (int i = 1; i <= k; i++) {
+                    after = after * size + settings[i];
+                }
+                next[code] = after;
+            }
+            int[] result = new int[positions];
+            for (int code = 0; code < positions; code++) {
+                for (int j = 0, at = code; j < 2 * k; j++, at = next[at]) {
+                    met[j] = at * size;
+                }
+                text.setLength(0);
+                for (int i = 0; i < k; i++) {
+                    for (int c = 0; c < size; c++) {
+                        link[c] = perms[met[i + k] + perms[met[i] + c]];
+                    }
+                    if (i > 0) {
+                        text.append(SEPARATOR);
+                    }
+                    appendCycleType(text, link, seen, counts);
+                }
+                String signature = text.toString();
+                Integer id = known.get(signature);
+                if (id == null) {
+                    id = ids.computeIfAbsent(signature, t -> {
+                        synchronized (texts) {
+                            texts.add(t);
+                            return texts.size() - 1;
+                        }
+                    });
+                    known.put(signature, id);
+                }
+                result[code] = id;
+            }
+            found[order] = result;
+        }
+    }
+
+    /** Write the catalog of the rotor orders ORDERS of MACHINE, each at
+     *  POSITIONS ground settings, to the file named NAME, where FOUND
+     *  gives the signature number of each, and TEXTS the signature
+     *  numbered by each index. */
+    private static void write(String name, Machine machine,
+                              List<String[]> orders, long positions,
+                              int[][] found, List<String> texts) {
+        int signatures = texts.size();
+        Integer[] byHash = new Integer[signatures];
+        long[] hashes = new long[signatures];
+        for (int s = 0; s < signatures; s++) {
+            byHash[s] = s;
+            hashes[s] = hash(texts.get(s));
+        }
+        Arrays.sort(byHash, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        int[] rank = new int[signatures];
+        for (int r = 0; r < signatures; r++) {
+            rank[byHash[r]] = r;
+        }
+        int[] starts = new int[signatures + 1];
+        for (int[] ids : found) {
+            for (int id : ids) {
+                starts[rank[id] + 1] += 1;
+            }
+        }
+        for (int r = 0; r < signatures; r++) {
+            starts[r + 1] += starts[r];
+        }
+        long[] settings = new long[starts[signatures]];
+        int[] next = starts.clone();
+        for (int order = 0; order < found.length; order++) {
+            for (int code = 0; code < found[order].length; code++) {
+                int r = rank[found[order][code]];
+                settings[next[r]] = order * positions + code;
+                next[r] += 1;
+            }
+        }
+        StringBuilder names = new StringBuilder();
+        for (String[] order : orders) {
+            if (names.length() > 0) {
+                names.append('\n');
+            }
+            names.append(String.join(" ", order));
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(name)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(machine.numRotors());
+            out.writeInt(machine.alphabet().size());
+            out.writeChars(machine.alphabet().chars());
+            out.writeInt(names.length());
+            out.writeChars(names.toString());
+            out.writeInt(signatures);
+            out.writeInt(settings.length);
+            for (int r = 0; r < signatures; r++) {
+                out.writeLong(hashes[byHash[r]]);
+            }
+            for (long setting : settings) {
+                out.writeLong(setting);
+            }
+            for (int start : starts) {
+                out.writeInt(start);
+            }
+            int textStart = 0;
+            out.writeInt(textStart);
+            for (int r = 0; r < signatures; r++) {
+                textStart += texts.get(byHash[r]).length();
+                out.writeInt(textStart);
+            }
+            for (int r = 0; r < signatures; r++) {
+                out.writeChars(texts.get(byHash[r]));
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the next BYTES bytes of DATA, as a buffer of their own,
+     *  and advance DATA past them. */
+    private static ByteBuffer slice(ByteBuffer data, int bytes) {
+        ByteBuffer result = data.slice().limit(bytes);
+        data.position(data.position() + bytes);
+        return result;
+    }
+
+    /** Return the 64-bit FNV-1a hash of TEXT. */
+    private static long hash(CharSequence text) {
+        long result = FNV_OFFSET;
+        for (int i = 0; i < text.length(); i++) {
+            result = (result ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return result;
+    }
+
+    /** Return a new machine configured from CONFIG. */
+    private static Machine newMachine(String config) {
+        return new Main(new Scanner(config), null, null).readConfig();
+    }
+
+    /** Return the setting line selecting rotor order ORDER, rotor names
+     *  separated by blanks, at the ground setting numbered CODE. */
+    private String settingLine(String order, long code) {
+        char[] setting = new char[_numRotors - 1];
+        for (int i = setting.length - 1; i >= 0; i--) {
+            setting[i] = _alphabet.toChar((int) (code % _alphabet.size()));
+            code /= _alphabet.size();
+        }
+        return "* " + order + " " + new String(setting);
+    }
+
+    /** Most settings a catalog may hold. */
+    private static final long MAX_SETTINGS = Integer.MAX_VALUE / 2;
+
+    /** Separates the cycle types of a signature. */
+    private static final String SEPARATOR = " / ";
+
+    /** Parameters of the FNV-1a hash. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+    /** Number of rotor slots of the catalogued machines. */
+    private final int _numRotors;
+
+    /** Alphabet of the catalogued machines. */
+    private final Alphabet _alphabet;
+
+    /** Rotor orders, rotor names separated by blanks, by number. */
+    private final String[] _orders;
+
+    /** Number of ground settings of each rotor order. */
+    private long _positions;
+
+    /** Hashes of the signatures, ascending. */
+    private final LongBuffer _hashes;
+
+    /** Settings, grouped by signature. */
+    private final LongBuffer _settings;
+
+    /** Index in _settings of the first setting of each signature, and
+     *  the number of settings. */
+    private final IntBuffer _starts;
+
+    /** Index in _texts of the start of each signature's text, and the
+     *  length of _texts. */
+    private final IntBuffer _textStarts;
+
+    /** Texts of the signatures, one after the other. */
+    private final CharBuffer _texts;
+}
@@ -0,0 +1,726 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.*;
+
+/** Differential testing of the ways this package has of carrying out an
+ *  Enigma conversion.  Random machines (alphabets, rotor wirings,
+ *  notches, ring settings, and plugboards), settings, and messages are
+ *  generated reproducibly from a seed, and each is converted by every
+ *  registered engine.  The first engine is a deliberately naive
+ *  reference that works directly from the cycle notation; any engine
+ *  that disagrees with it, or throws an exception, fails the case, which
+ *  is then shrunk to a small counterexample and printed in the form of
+ *  a configuration and input that Main accepts.
+ *  @author Osvaldo Valadez
+ */
+public final class Differential {
+
+    /** Check engines against each other as specified by ARGS, where
+     *  0 <= ARGS.length <= 3.  ARGS[0] is optional and gives the number
+     *  of cases (default 100000), ARGS[1] the seed of the first case
+     *  (default 0), and ARGS[2] the number of threads (default, the
+     *  number of processors).  Exits normally if every engine agrees on
+     *  every case; otherwise prints a counterexample and exits with
+     *  code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length > 3) {
+                throw error("Only 0 to 3 command-line arguments allowed");
+            }
+            long cases = args.length > 0
+                ? Main.parseCount(args[0]) : DEFAULT_CASES;
+            long seed = 0;
+            if (args.length > 1) {
+                try {
+                    seed = Long.parseLong(args[1]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad seed: %s", args[1]);
+                }
+            }
+            int threads = args.length > 2 ? Main.parseCount(args[2])
+                : Runtime.getRuntime().availableProcessors();
+            Differential check = new Differential(ENGINES);
+            long start = System.nanoTime();
+            Case failure = check.run(seed, cases, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (failure == null) {
+                System.out.printf("%d cases agree on %d engines "
+                                  + "(%.0f cases/s)%n", cases,
+                                  ENGINES.size(), cases / seconds);
+                return;
+            }
+            System.out.print(check.describe(failure));
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A way of carrying out the conversions of an Enigma machine. */
+    interface Engine {
+        /** Return the conversion of the message of C by the machine of
+         *  C, starting from the settings of C. */
+        String convert(Case c);
+    }
+
+    /** The engines checked by main, by name.  The first is the one the
+     *  others are compared against. */
+    static final Map<String, Engine> ENGINES = new LinkedHashMap<>();
+
+    static {
+        ENGINES.put("reference", Differential::reference);
+        ENGINES.put("machine", Differential::machine);
+        ENGINES.put("main", Differential::process);
+        ENGINES.put("bytes", Differential::bytes);
+        ENGINES.put("table", Differential::table);
+        ENGINES.put("compiled", Differential::compiled);
+    }
+
+    /** A checker comparing ENGINES, whose first entry is the
+     *  reference. */
+    Differential(Map<String, Engine> engines) {
+        this(engines, BYTE_CASES);
+    }
+
+    /** A checker comparing ENGINES, whose first entry is the reference,
+     *  in which one case in BYTECASES has an alphabet of
+     *  ByteConverter.SIZE characters, or none if BYTECASES is 0. */
+    Differential(Map<String, Engine> engines, int byteCases) {
+        _engines = new LinkedHashMap<>(engines);
+        _byteCases = byteCases;
+    }
+
+    /** Check CASES cases, generated from seeds SEED, SEED + 1, ..., on
+     *  THREADS threads.  Returns a shrunk counterexample to the first
+     *  failing case found, or null if there is none. */
+    Case run(long seed, long cases, int threads) {
+        AtomicLong next = new AtomicLong(0);
+        AtomicReference<Case> failure = new AtomicReference<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                for (long k = next.getAndIncrement();
+                     k < cases && failure.get() == null;
+                     k = next.getAndIncrement()) {
+                    Case c = generate(new Random(seed + k), _byteCases);
+                    if (fails(c)) {
+                        failure.compareAndSet(null, c);
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw error("check failed: %s", excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return failure.get() == null ? null : shrink(failure.get());
+    }
+
+    /** Return the results of converting C with each of my engines, in
+     *  order.  An engine that throws an exception gets a result
+     *  describing it. */
+    List<String> results(Case c) {
+        List<String> result = new ArrayList<>();
+        for (Engine engine : _engines.values()) {
+            try {
+                result.add(engine.convert(c));
+            } catch (RuntimeException | AssertionError excp) {
+                result.add("exception: " + excp);
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff my engines do not all agree on C. */
+    boolean fails(Case c) {
+        List<String> results = results(c);
+        for (String result : results) {
+            if (!result.equals(results.get(0))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return a description of the failing case C: a configuration and
+     *  input for Main that reproduce it, and the result of each
+     *  engine. */
+    String describe(Case c) {
+        StringBuilder result = new StringBuilder();
+        result.append("Counterexample configuration:\n").append(c.config())
+            .append("Input:\n").append(c.input());
+        List<String> results = results(c);
+        int k = 0;
+        for (String name : _engines.keySet()) {
+            result.append(String.format("%s: %s%n", name, results.get(k)));
+            k += 1;
+        }
+        return result.toString();
+    }
+
+    /** Return a case that fails like C but is as small as simple
+     *  reductions can make it: the message is cut after the first
+     *  difference, and plugs, ring settings, rotor settings, and
+     *  notches are removed or zeroed one at a time as long as the case
+     *  still fails. */
+    Case shrink(Case c) {
+        c = truncate(c);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Case smaller : reductions(c)) {
+                if (fails(smaller)) {
+                    c = truncate(smaller);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return c;
+    }
+
+    /** Return C with its message cut just after the first character on
+     *  which some engine disagrees with the first. */
+    private Case truncate(Case c) {
+        List<String> results = results(c);
+        int first = c._message.length();
+        for (String result : results) {
+            int i;
+            for (i = 0; i < first && i < result.length()
+                     && i < results.get(0).length(); i++) {
+                if (result.charAt(i) != results.get(0).charAt(i)) {
+                    break;
+                }
+            }
+            if (!result.equals(results.get(0))) {
+                first = Math.min(first, i);
+            }
+        }
+        Case result = c.copy();
+        result._message = c._message.substring(0,
+            Math.min(c._message.length(), first + 1));
+        return fails(result) ? result : c;
+    }
+
+    /** Return the cases that are one simple step smaller than C. */
+    private List<Case> reductions(Case c) {
+        List<Case> result = new ArrayList<>();
+        char zero = c._alphabet.charAt(0);
+        String[] plugs = c._plugboard.isEmpty() ? new String[0]
+            : c._plugboard.split(" ");
+        for (int i = 0; i < plugs.length; i++) {
+            Case smaller = c.copy();
+            StringBuilder rest = new StringBuilder();
+            for (int j = 0; j < plugs.length; j++) {
+                if (j != i) {
+                    rest.append(rest.length() == 0 ? "" : " ")
+                        .append(plugs[j]);
+                }
+            }
+            smaller._plugboard = rest.toString();
+            result.add(smaller);
+        }
+        if (c._rings != null) {
+            Case smaller = c.copy();
+            smaller._rings = null;
+            result.add(smaller);
+        }
+        for (int i = 0; i < c._setting.length(); i++) {
+            if (c._setting.charAt(i) != zero) {
+                Case smaller = c.copy();
+                char[] setting = c._setting.toCharArray();
+                setting[i] = zero;
+                smaller._setting = new String(setting);
+                result.add(smaller);
+            }
+            if (c._rings != null && c._rings.charAt(i) != zero) {
+                Case smaller = c.copy();
+                char[] rings = c._rings.toCharArray();
+                rings[i] = zero;
+                smaller._rings = new String(rings);
+                result.add(smaller);
+            }
+        }
+        for (int i = 0; i < c._notches.length; i++) {
+            for (int j = 0; c._notches[i] != null
+                     && j < c._notches[i].length(); j++) {
+                Case smaller = c.copy();
+                smaller._notches[i] = c._notches[i].substring(0, j)
+                    + c._notches[i].substring(j + 1);
+                result.add(smaller);
+            }
+        }
+        return result;
+    }
+
+    /** Return a random case generated using RANDOM.  Alphabets and
+     *  machines are mostly small, so that notches are often reached and
+     *  double stepping is common, with occasional larger ones, and one
+     *  alphabet in BYTECASES (none if BYTECASES is 0) has
+     *  ByteConverter.SIZE characters. */
+    static Case generate(Random random, int byteCases) {
+        Case c = new Case();
+        int size = random.nextInt(8) == 0 ? 2 + random.nextInt(MAX_SIZE - 1)
+            : 2 + random.nextInt(SMALL_SIZE - 1);
+        if (byteCases > 0 && random.nextInt(byteCases) == 0) {
+            size = ByteConverter.SIZE;
+        }
+        c._alphabet = Workload.alphabet(size);
+        int slots = 2 + random.nextInt(MAX_SLOTS - 1);
+        c._pawls = random.nextInt(slots);
+        c._cycles = new String[slots];
+        c._notches = new String[slots];
+        c._cycles[0] = cycles(c._alphabet, reflector(random, size));
+        for (int i = 1; i < slots; i++) {
+            c._cycles[i] = cycles(c._alphabet, shuffle(random, size));
+            if (i >= slots - c._pawls) {
+                StringBuilder notches = new StringBuilder();
+                for (int k = 0; k < size; k++) {
+                    if (random.nextInt(size) < 2) {
+                        notches.append(c._alphabet.charAt(k));
+                    }
+                }
+                c._notches[i] = notches.toString();
+            }
+        }
+        c._setting = randomString(random, c._alphabet, slots - 1);
+        c._rings = random.nextBoolean() ? null
+            : randomString(random, c._alphabet, slots - 1);
+        int[] plugs = shuffle(random, size);
+        StringBuilder plugboard = new StringBuilder();
+        for (int i = 2 * random.nextInt(size / 2 + 1) - 1; i > 0; i -= 2) {
+            plugboard.append(plugboard.length() == 0 ? "(" : " (")
+                .append(c._alphabet.charAt(plugs[i]))
+                .append(c._alphabet.charAt(plugs[i - 1])).append(')');
+        }
+        c._plugboard = plugboard.toString();
+        int length = random.nextInt(16) == 0
+            ? random.nextInt(MAX_LENGTH) : random.nextInt(SHORT_LENGTH);
+        c._message = randomString(random, c._alphabet, length);
+        return c;
+    }
+
+    /** Return a random string of LENGTH characters from ALPHABET, chosen
+     *  using RANDOM. */
+    private static String randomString(Random random, String alphabet,
+                                       int length) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(result);
+    }
+
+    /** Return a random permutation of 0 .. SIZE - 1, chosen using
+     *  RANDOM. */
+    private static int[] shuffle(Random random, int size) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return a random permutation of 0 .. SIZE - 1 made of 2-cycles,
+     *  with one fixed point if SIZE is odd, chosen using RANDOM. */
+    private static int[] reflector(Random random, int size) {
+        int[] order = shuffle(random, size);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[order[i]] = order[i];
+        }
+        for (int i = 0; i + 1 < size; i += 2) {
+            result[order[i]] = order[i + 1];
+            result[order[i + 1]] = order[i];
+        }
+        return result;
+    }
+
+    /** Return PERM, a permutation of the indices of ALPHABET, in cycle
+     *  notation, leaving out fixed points. */
+    private static String cycles(String alphabet, int[] perm) {
+        StringBuilder result = new StringBuilder();
+        boolean[] done = new boolean[perm.length];
+        for (int i = 0; i < perm.length; i++) {
+            if (!done[i] && perm[i] != i) {
+                result.append(result.length() == 0 ? "(" : " (");
+                for (int j = i; !done[j]; j = perm[j]) {
+                    done[j] = true;
+                    result.append(alphabet.charAt(j));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** The reference engine: converts the message of C by following the
+     *  cycle notation of each wiring character by character, with no
+     *  tables and no code shared with Machine. */
+    static String reference(Case c) {
+        String alpha = c._alphabet;
+        int size = alpha.length(), slots = c._cycles.length;
+        int[] offset = new int[slots], posn = new int[slots];
+        for (int i = 1; i < slots; i++) {
+            posn[i] = alpha.indexOf(c._setting.charAt(i - 1));
+        }
+        boolean[] advancing = new boolean[slots];
+        StringBuilder result = new StringBuilder();
+        for (int t = 0; t < c._message.length(); t++) {
+            for (int i = 1; i < slots; i++) {
+                advancing[i] = i == slots - 1;
+            }
+            for (int i = slots - 2; i > 0; i--) {
+                if (c._notches[i] != null && c._notches[i + 1] != null
+                    && c._notches[i + 1].indexOf(alpha.charAt(posn[i + 1]))
+                       >= 0) {
+                    advancing[i] = advancing[i + 1] = true;
+                }
+            }
+            for (int i = 1; i < slots; i++) {
+                if (advancing[i] && c._notches[i] != null) {
+                    posn[i] = (posn[i] + 1) % size;
+                }
+                int ring = c._rings == null ? 0
+                    : alpha.indexOf(c._rings.charAt(i - 1));
+                offset[i] = posn[i] - ring;
+            }
+            char ch = image(c._plugboard, c._message.charAt(t));
+            for (int i = slots - 1; i >= 0; i--) {
+                ch = through(alpha, c._cycles[i], offset[i], ch, true);
+            }
+            for (int i = 1; i < slots; i++) {
+                ch = through(alpha, c._cycles[i], offset[i], ch, false);
+            }
+            result.append(image(c._plugboard, ch));
+        }
+        return result.toString();
+    }
+
+    /** Return the result of passing CH through a rotor wired as CYCLES,
+     *  over ALPHA, turned OFFSET places from its 0 position, from right
+     *  to left if FORWARD and otherwise from left to right. */
+    private static char through(String alpha, String cycles, int offset,
+                                char ch, boolean forward) {
+        int size = alpha.length();
+        int contact = Math.floorMod(alpha.indexOf(ch) + offset, size);
+        char wired = alpha.charAt(contact);
+        wired = forward ? image(cycles, wired) : preimage(cycles, wired);
+        return alpha.charAt(Math.floorMod(alpha.indexOf(wired) - offset,
+                                          size));
+    }
+
+    /** Return the image of CH under the permutation whose cycle notation
+     *  is CYCLES. */
+    private static char image(String cycles, char ch) {
+        int i = cycles.indexOf(ch);
+        if (i < 0) {
+            return ch;
+        }
+        if (cycles.charAt(i + 1) != ')') {
+            return cycles.charAt(i + 1);
+        }
+        return cycles.charAt(cycles.lastIndexOf('(', i) + 1);
+    }
+
+    /** Return the preimage of CH under the permutation whose cycle
+     *  notation is CYCLES. */
+    private static char preimage(String cycles, char ch) {
+        int i = cycles.indexOf(ch);
+        if (i < 0) {
+            return ch;
+        }
+        if (cycles.charAt(i - 1) != '(') {
+            return cycles.charAt(i - 1);
+        }
+        return cycles.charAt(cycles.indexOf(')', i) - 1);
+    }
+
+    /** The engine that converts the message of C with a Machine built
+     *  from the classes Main uses. */
+    static String machine(Case c) {
+        Machine machine = c.machine();
+        return machine.convert(c._message);
+    }
+
+    /** The engine that runs Main on the configuration and input of C,
+     *  in byte mode whenever the alphabet of C allows it, and returns
+     *  its output without the blanks and line breaks.  Messages of even
+     *  length are converted by the table engine, the rest by the rotor
+     *  engine (see EngineChoice). */
+    static String process(Case c) {
+        boolean latin1 = true;
+        for (char ch : c._alphabet.toCharArray()) {
+            latin1 &= ch <= LATIN1_MAX;
+        }
+        Charset charset =
+            latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(bytes, false, charset);
+        Main main =
+            new Main(new Scanner(c.config()),
+                     new ByteArrayInputStream(c.input().getBytes(charset)),
+                     output, charset);
+        main.setEngine(c._message.length() % 2 == 0 ? EngineChoice.TABLE
+                       : EngineChoice.ROTOR);
+        main.process();
+        return new String(bytes.toByteArray(), charset)
+            .replaceAll("[ \r\n]", "");
+    }
+
+    /** The engine that converts the message of C, if its alphabet has
+     *  256 characters, with Machine.convert(ByteBuffer), in two pieces
+     *  so that the settings left by the first are checked.  Other cases
+     *  are converted as by machine(C). */
+    static String bytes(Case c) {
+        if (c._alphabet.length() != ByteConverter.SIZE) {
+            return machine(c);
+        }
+        Machine machine = c.machine();
+        Alphabet alpha = machine.alphabet();
+        int length = c._message.length();
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) alpha.toInt(c._message.charAt(i)));
+        }
+        buffer.position(0).limit(length / 3);
+        machine.convert(buffer);
+        buffer.position(length / 3).limit(length);
+        machine.convert(buffer);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append(alpha.toChar(buffer.get(i) & LATIN1_MAX));
+        }
+        return result.toString();
+    }
+
+    /** The engine that converts the message of C with a TableConverter,
+     *  in two pieces, moving the rotors with the machine itself in
+     *  between, so that the converter's reloading of settings is
+     *  checked.  Messages of even length use tables on the heap, the
+     *  rest tables in a direct buffer. */
+    static String table(Case c) {
+        return table(c, c._message.length() % 2 == 0 ? TableStorage.HEAP
+                     : TableStorage.DIRECT);
+    }
+
+    /** Return the engine that converts the message of a case as
+     *  table(C) does, with tables kept as STORAGE names (see
+     *  TableStorage). */
+    static Engine table(String storage) {
+        return c -> table(c, storage);
+    }
+
+    /** Return the conversion of the message of C as by table(C), with
+     *  tables kept as STORAGE names. */
+    private static String table(Case c, String storage) {
+        Machine machine = c.machine();
+        return bulk(machine,
+                    new TableConverter(machine, new TableStorage(storage)),
+                    c._message);
+    }
+
+    /** The engine that converts the message of C with a CompiledMachine,
+     *  as table(C) does with a TableConverter. */
+    static String compiled(Case c) {
+        Machine machine = c.machine();
+        return bulk(machine, new CompiledMachine(machine), c._message);
+    }
+
+    /** Return the conversion of MESSAGE with CONVERTER, a converter for
+     *  MACHINE, in two pieces, with one character converted by MACHINE
+     *  itself in between. */
+    private static String bulk(Machine machine, BulkConverter converter,
+                               String message) {
+        Alphabet alpha = machine.alphabet();
+        int length = message.length(), cut = length / 3;
+        int[] indices = new int[length];
+        for (int i = 0; i < length; i++) {
+            indices[i] = alpha.toInt(message.charAt(i));
+        }
+        converter.convert(indices, 0, cut);
+        if (cut < length) {
+            indices[cut] = machine.convert(indices[cut]);
+            cut += 1;
+        }
+        converter.convert(indices, cut, length);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append(alpha.toChar(indices[i]));
+        }
+        return result.toString();
+    }
+
+    /** A machine, its settings, and a message to convert, as generated
+     *  by generate. */
+    static final class Case {
+
+        /** Return the number of rotor slots of my machine. */
+        int numRotors() {
+            return _cycles.length;
+        }
+
+        /** Return the name of the rotor in slot K. */
+        static String name(int k) {
+            return "S" + k;
+        }
+
+        /** Return a Machine configured, set up, and plugged as I
+         *  describe. */
+        Machine machine() {
+            Alphabet alpha = new Alphabet(_alphabet);
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            String[] names = new String[numRotors()];
+            for (int i = 0; i < numRotors(); i++) {
+                names[i] = name(i);
+                Permutation perm = new Permutation(_cycles[i], alpha);
+                if (i == 0) {
+                    rotors.add(new Reflector(names[i], perm));
+                } else if (_notches[i] == null) {
+                    rotors.add(new FixedRotor(names[i], perm));
+                } else {
+                    rotors.add(new MovingRotor(names[i], perm,
+                                               _notches[i]));
+                }
+            }
+            Machine result = new Machine(alpha, numRotors(), _pawls,
+                                         rotors);
+            result.insertRotors(names);
+            result.setRotors(_setting, _rings);
+            if (!_plugboard.isEmpty()) {
+                result.setPlugboard(new Permutation(_plugboard, alpha));
+            }
+            return result;
+        }
+
+        /** Return the text of a configuration file for my machine. */
+        String config() {
+            StringBuilder result = new StringBuilder();
+            result.append(_alphabet).append('\n').append(numRotors())
+                .append(' ').append(_pawls).append('\n');
+            for (int i = 0; i < numRotors(); i++) {
+                String kind = i == 0 ? "R"
+                    : _notches[i] == null ? "N" : "M" + _notches[i];
+                result.append(name(i)).append(' ').append(kind).append(' ')
+                    .append(_cycles[i]).append('\n');
+            }
+            return result.toString();
+        }
+
+        /** Return the text of an input file for Main holding my settings
+         *  and message. */
+        String input() {
+            StringBuilder result = new StringBuilder("*");
+            for (int i = 0; i < numRotors(); i++) {
+                result.append(' ').append(name(i));
+            }
+            result.append(' ').append(_setting);
+            if (_rings != null) {
+                result.append(' ').append(_rings);
+            }
+            if (!_plugboard.isEmpty()) {
+                result.append(' ').append(_plugboard);
+            }
+            return result.append('\n').append(_message).append('\n')
+                .toString();
+        }
+
+        /** Return a copy of me that may be modified independently. */
+        Case copy() {
+            Case result = new Case();
+            result._alphabet = _alphabet;
+            result._pawls = _pawls;
+            result._cycles = _cycles.clone();
+            result._notches = _notches.clone();
+            result._setting = _setting;
+            result._rings = _rings;
+            result._plugboard = _plugboard;
+            result._message = _message;
+            return result;
+        }
+
+        /** The characters of my alphabet. */
+        String _alphabet;
+
+        /** Number of pawls. */
+        int _pawls;
+
+        /** Wiring of the rotor in each slot in cycle notation, with the
+         *  reflector in slot 0. */
+        String[] _cycles;
+
+        /** Notches of the rotor in each slot, or null for the reflector
+         *  and non-moving rotors. */
+        String[] _notches;
+
+        /** Initial settings and ring settings (null for all 0) of the
+         *  rotors in slots 1 and up. */
+        String _setting, _rings;
+
+        /** Plugboard in cycle notation. */
+        String _plugboard;
+
+        /** The message converted. */
+        String _message;
+    }
+
+    /** Number of cases checked by default. */
+    private static final long DEFAULT_CASES = 100000;
+
+    /** Largest alphabet size generated, and largest usually generated. */
+    private static final int MAX_SIZE = 120, SMALL_SIZE = 12;
+
+    /** By default, one case in this many has an alphabet of
+     *  ByteConverter.SIZE characters. */
+    private static final int BYTE_CASES = 32;
+
+    /** Largest number of rotor slots generated. */
+    private static final int MAX_SLOTS = 6;
+
+    /** Longest message generated, and longest usually generated. */
+    private static final int MAX_LENGTH = 2000, SHORT_LENGTH = 40;
+
+    /** Largest character in ISO-8859-1. */
+    private static final int LATIN1_MAX = 0xff;
+
+    /** The engines I check, by name. */
+    private final Map<String, Engine> _engines;
+
+    /** One case in this many has an alphabet of ByteConverter.SIZE
+     *  characters, or none if 0. */
+    private final int _byteCases;
+}
@@ -0,0 +1,253 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** The choice between the two ways Main has of converting messages in
+ *  byte mode: the rotor engine, which is Machine.convert(int) applied
+ *  to each character, and costs nothing to set up, and the table
+ *  engine, TableConverter, which is faster per character once its
+ *  tables are built, but must build them for each setting line.  The
+ *  choice may be forced; otherwise the table engine is ruled out if
+ *  its tables would exceed a memory budget, and if not, both engines
+ *  are timed on a short sample with the machine as first set up, which
+ *  gives the message length above which the table engine pays off.
+ *  Main compares that with the mean length of the messages it has seen
+ *  so far at each setting line.  Timings are kept for each shape of
+ *  machine, so that a process calibrates once for each.  When the
+ *  input is known to be too short for tables to pay off at all, no
+ *  choice is made: the rotor engine is used without calibrating.  A
+ *  third engine, CompiledMachine, is used only when forced.
+ *  @author Osvaldo Valadez
+ */
+class EngineChoice {
+
+    /** Names of the choices. */
+    static final String AUTO = "auto", ROTOR = "rotor", TABLE = "table",
+        COMPILED = "compiled";
+
+    /** Return true iff NAME names a choice. */
+    static boolean valid(String name) {
+        return name.equals(AUTO) || name.equals(ROTOR)
+            || name.equals(TABLE) || name.equals(COMPILED);
+    }
+
+    /** The choice named NAME for MACHINE, which must be set up, and
+     *  which is left as it was, where the table engine keeps its tables
+     *  in STORAGE, for input of unknown length. */
+    EngineChoice(Machine machine, String name, TableStorage storage) {
+        this(machine, name, storage, -1);
+    }
+
+    /** The choice named NAME for MACHINE, which must be set up, and
+     *  which is left as it was, where the table engine keeps its tables
+     *  in STORAGE, for INPUT bytes of input, or for input of unknown
+     *  length if INPUT is negative.  Off the heap, tables are held to a
+     *  larger budget, since they do not burden the garbage collector. */
+    EngineChoice(Machine machine, String name, TableStorage storage,
+                 long input) {
+        _storage = storage;
+        int size = machine.alphabet().size();
+        long memory, budget;
+        if (storage.onHeap()) {
+            memory = TableConverter.memory(size, machine.numRotors());
+            budget = Math.min(MAX_BUDGET, Runtime.getRuntime().maxMemory()
+                              / BUDGET_FRACTION);
+        } else {
+            memory = TableConverter.tableBytes(size, storage.width(size));
+            budget = MAX_OFF_HEAP_BUDGET;
+        }
+        _compiled = name.equals(COMPILED);
+        if (name.equals(ROTOR) || name.equals(TABLE) || _compiled) {
+            _breakEven = name.equals(ROTOR) ? Double.POSITIVE_INFINITY : -1;
+            _reason = "chosen by --engine";
+        } else if (!name.equals(AUTO)) {
+            throw error("unknown engine: %s", name);
+        } else if (input >= 0 && input < SHORT_INPUT) {
+            _breakEven = Double.POSITIVE_INFINITY;
+            _reason = String.format("%d bytes of input", input);
+            _made = false;
+            return;
+        } else if (memory > budget) {
+            _breakEven = Double.POSITIVE_INFINITY;
+            _reason = String.format("tables for %d characters and %d rotors"
+                                    + " need %d bytes, over the budget of"
+                                    + " %d", size, machine.numRotors(),
+                                    memory, budget);
+        } else {
+            _breakEven = calibrate(machine);
+            _reason = String.format("%.1f ns/char by rotor, %.1f ns/char by"
+                                    + " table after %.0f us of setup",
+                                    _rotorNanos, _tableNanos,
+                                    _setupNanos / 1e3);
+        }
+        _made = true;
+    }
+
+    /** The same choice as CHOICE, where the table engine keeps its
+     *  tables in STORAGE. */
+    private EngineChoice(EngineChoice choice, TableStorage storage) {
+        _storage = storage;
+        _breakEven = choice._breakEven;
+        _compiled = choice._compiled;
+        _made = choice._made;
+        _reason = choice._reason;
+        _rotorNanos = choice._rotorNanos;
+        _tableNanos = choice._tableNanos;
+        _setupNanos = choice._setupNanos;
+    }
+
+    /** Return my choice, for tables kept in STORAGE. */
+    EngineChoice in(TableStorage storage) {
+        return new EngineChoice(this, storage);
+    }
+
+    /** Return true iff a choice between engines was made, rather than
+     *  the rotor engine taken for input too short to need one. */
+    boolean made() {
+        return _made;
+    }
+
+    /** Return the converter to use with MACHINE, which has just been
+     *  set up, for a message whose expected length is LENGTH
+     *  characters, or null if the rotor engine should be used. */
+    BulkConverter converter(Machine machine, double length) {
+        if (length <= _breakEven) {
+            return null;
+        } else if (_compiled) {
+            return new CompiledMachine(machine);
+        }
+        return new TableConverter(machine, _storage);
+    }
+
+    @Override
+    public String toString() {
+        String rule;
+        if (_compiled) {
+            rule = COMPILED;
+        } else if (_breakEven < 0) {
+            rule = TABLE;
+        } else if (Double.isInfinite(_breakEven)) {
+            rule = ROTOR;
+        } else {
+            rule = String.format("%s for messages over %.0f characters,"
+                                 + " otherwise %s", TABLE, _breakEven,
+                                 ROTOR);
+        }
+        return String.format("%s (%s)", rule, _reason);
+    }
+
+    /** Return the message length above which the table engine is
+     *  faster on MACHINE, or infinity if it never is, from the timings
+     *  of machines of its shape, taken first if need be. */
+    private double calibrate(Machine machine) {
+        String shape = String.format("%d %d %s",
+                                     machine.alphabet().size(),
+                                     machine.numRotors(), _storage);
+        double[] nanos;
+        synchronized (TIMINGS) {
+            nanos = TIMINGS.get(shape);
+            if (nanos == null) {
+                nanos = time(machine);
+                TIMINGS.put(shape, nanos);
+            }
+        }
+        _rotorNanos = nanos[0];
+        _tableNanos = nanos[1];
+        _setupNanos = nanos[2];
+        if (_tableNanos >= _rotorNanos) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return _setupNanos / (_rotorNanos - _tableNanos);
+    }
+
+    /** Time both engines on MACHINE, restoring its settings afterwards,
+     *  and return the nanoseconds per character by rotor and by table,
+     *  and to set up the table engine, in that order.  Rounds are
+     *  repeated for a fixed time, and the fastest of each kind counts,
+     *  so that the timings are those of compiled code, as for the rest
+     *  of a run, rather than the interpreter's. */
+    private double[] time(Machine machine) {
+        int size = machine.alphabet().size();
+        int[] settings = new int[machine.numRotors()];
+        machine.saveSettings(settings);
+        int[] sample = new int[SAMPLE_LENGTH];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = i % size;
+        }
+        long rotor = Long.MAX_VALUE, table = Long.MAX_VALUE,
+            setup = Long.MAX_VALUE;
+        long deadline = System.nanoTime() + CALIBRATION_NANOS;
+        for (int round = 0; round < MIN_ROUNDS
+                 || System.nanoTime() < deadline; round++) {
+            machine.restoreSettings(settings);
+            long start = System.nanoTime();
+            for (int i = 0; i < sample.length; i++) {
+                sample[i] = machine.convert(sample[i]);
+            }
+            rotor = Math.min(rotor, System.nanoTime() - start);
+            machine.restoreSettings(settings);
+            start = System.nanoTime();
+            TableConverter converter = new TableConverter(machine, _storage);
+            long built = System.nanoTime();
+            converter.convert(sample, 0, sample.length);
+            setup = Math.min(setup, built - start);
+            table = Math.min(table, System.nanoTime() - built);
+        }
+        machine.restoreSettings(settings);
+        return new double[] { (double) rotor / sample.length,
+                              (double) table / sample.length, setup };
+    }
+
+    /** Number of characters converted by each engine per round of
+     *  calibration. */
+    private static final int SAMPLE_LENGTH = 1024;
+
+    /** Least number of rounds of calibration. */
+    private static final int MIN_ROUNDS = 3;
+
+    /** Time spent on calibration, in nanoseconds, unless MIN_ROUNDS take
+     *  longer. */
+    private static final long CALIBRATION_NANOS = 30_000_000;
+
+    /** Input shorter than this, in bytes, never needs the table
+     *  engine. */
+    private static final long SHORT_INPUT = 1 << 14;
+
+    /** Results of time(), by the shape of machine they were taken on. */
+    private static final Map<String, double[]> TIMINGS = new HashMap<>();
+
+    /** Most memory the tables may take. */
+    private static final long MAX_BUDGET = 64L << 20;
+
+    /** The tables may take at most the maximum heap size divided by
+     *  this. */
+    private static final int BUDGET_FRACTION = 8;
+
+    /** Most memory the tables may take off the heap. */
+    private static final long MAX_OFF_HEAP_BUDGET = 1L << 30;
+
+    /** Where the table engine keeps its tables. */
+    private final TableStorage _storage;
+
+    /** Message length above which the table engine is used: negative to
+     *  use it always, or infinite never to. */
+    private final double _breakEven;
+
+    /** True iff the compiled engine was chosen. */
+    private final boolean _compiled;
+
+    /** True iff a choice was made (see made()). */
+    private final boolean _made;
+
+    /** Why _breakEven is what it is. */
+    private final String _reason;
+
+    /** Calibrated nanoseconds per character of each engine. */
+    private double _rotorNanos, _tableNanos;
+
+    /** Calibrated nanoseconds to build a TableConverter. */
+    private double _setupNanos;
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/** An input stream on a file that is still being appended to, which
+ *  never ends: at the end of the data written so far, reads wait for
+ *  more, as "tail -f" does.  Waiting blocks on a WatchService for the
+ *  file's directory, so that an idle stream uses no CPU, with a
+ *  timeout as a fallback for file systems that do not report changes.
+ *  Before waiting, a stream calls its idle action, which is expected
+ *  to flush whatever output depends on the input so far; it does this
+ *  at most once per latency period, so that output is written in
+ *  batches while input arrives in small pieces, and no later than one
+ *  latency period after the input ran dry.
+ *  @author Osvaldo Valadez
+ */
+class FollowInputStream extends InputStream {
+
+    /** A stream reading IN, which reads the file named PATH, calling
+     *  IDLE when waiting for more input, at most once every LATENCY
+     *  milliseconds. */
+    FollowInputStream(FileInputStream in, Path path, long latency,
+                      Runnable idle) throws IOException {
+        _in = in;
+        _latency = latency;
+        _idle = idle;
+        Path dir = path.toAbsolutePath().getParent();
+        _watcher = FileSystems.getDefault().newWatchService();
+        dir.register(_watcher, StandardWatchEventKinds.ENTRY_MODIFY);
+        _lastIdle = System.currentTimeMillis();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        read(b, 0, 1);
+        return b[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int n = _in.read(b, off, len);
+            if (n > 0) {
+                return n;
+            }
+            long now = System.currentTimeMillis();
+            long wait = _lastIdle + _latency - now;
+            if (wait <= 0) {
+                _idle.run();
+                _lastIdle = now;
+                wait = IDLE_POLL;
+            }
+            await(wait);
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return _in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _watcher.close();
+        _in.close();
+    }
+
+    /** Wait up to MILLIS milliseconds for something in the directory of
+     *  my file to change. */
+    private void await(long millis) throws IOException {
+        try {
+            WatchKey key = _watcher.poll(millis, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                key.pollEvents();
+                key.reset();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while following");
+        }
+    }
+
+    /** Longest wait, in milliseconds, for the file to change when there
+     *  is no output to flush. */
+    private static final long IDLE_POLL = 1000;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The file I read. */
+    private final FileInputStream _in;
+
+    /** Least number of milliseconds between calls to _idle. */
+    private final long _latency;
+
+    /** Action performed before waiting for input. */
+    private final Runnable _idle;
+
+    /** Watcher of the directory containing my file. */
+    private final WatchService _watcher;
+
+    /** Time of the last call to _idle, in milliseconds. */
+    private long _lastIdle;
+}
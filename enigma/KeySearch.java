@@ -0,0 +1,397 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Ciphertext-only search for the rotor order and rotor settings of an
+ *  Enigma message.  Every rotor order that the configuration allows is
+ *  tried at every setting, and each trial decryption is scored by its
+ *  index of coincidence.  The best few candidates are reported as
+ *  setting lines that Main accepts.
+ *  @author Osvaldo Valadez
+ */
+public final class KeySearch {
+
+    /** Search for the key of a ciphertext, as specified by ARGS, where
+     *  2 <= ARGS.length <= 4.  ARGS[0] is the name of a configuration
+     *  file and ARGS[1] the name of a file containing ciphertext.
+     *  ARGS[2] is optional and gives the number of candidates to
+     *  report (default 10).  ARGS[3] is optional and gives a time limit
+     *  in seconds, after which the search is cancelled and the best
+     *  candidates found so far are reported. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 4) {
+                throw error("Only 2, 3, or 4 command-line arguments allowed");
+            }
+            int best =
+                args.length > 2 ? Main.parseCount(args[2]) : DEFAULT_BEST;
+            KeySearch search =
+                new KeySearch(Main.readFile(args[0]), Main.readFile(args[1]),
+                              best, Runtime.getRuntime().availableProcessors());
+            ScheduledExecutorService timer =
+                Executors.newSingleThreadScheduledExecutor();
+            timer.scheduleAtFixedRate(search::report, 1, 1, TimeUnit.SECONDS);
+            if (args.length > 3) {
+                timer.schedule(search::cancel, Main.parseCount(args[3]),
+                               TimeUnit.SECONDS);
+            }
+            List<String> result;
+            try {
+                result = search.search();
+            } finally {
+                timer.shutdownNow();
+            }
+            for (String line : result) {
+                System.out.println(line);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search over the machines described by the configuration text
+     *  CONFIG for the key of CIPHERTEXT, keeping the BEST highest
+     *  scoring candidates and using THREADS worker threads.
+     *  Characters of CIPHERTEXT not in the configured alphabet (after
+     *  conversion to upper case) are ignored. */
+    KeySearch(String config, String ciphertext, int best, int threads) {
+        _config = config;
+        _best = best;
+        _threads = threads;
+        Machine machine = newMachine();
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _cipher = _alphabet.toInts(ciphertext.toUpperCase());
+        _orders = rotorOrders(machine);
+        _positions = 1;
+        for (int i = 1; i < _numRotors; i++) {
+            if (_positions > Long.MAX_VALUE / _alphabet.size()) {
+                throw error("too many rotor settings to search");
+            }
+            _positions *= _alphabet.size();
+        }
+    }
+
+    /** Run the search to completion, or until cancel() is called, and
+     *  return the best candidates found, best first.  Each is a line
+     *  giving the index of coincidence of the candidate decryption
+     *  followed by the setting line that produces it. */
+    List<String> search() {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        AtomicInteger nextOrder = new AtomicInteger();
+        List<Future<Best>> workers = new ArrayList<>();
+        for (int i = 0; i < _threads; i++) {
+            workers.add(pool.submit(() -> runWorker(nextOrder)));
+        }
+        Best result = new Best(_best);
+        try {
+            for (Future<Best> worker : workers) {
+                result.addAll(worker.get());
+            }
+        } catch (InterruptedException excp) {
+            cancel();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException excp) {
+            cancel();
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("search failed: %s", excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return result.describe();
+    }
+
+    /** Stop the search as soon as possible.  search() then returns the
+     *  best candidates found so far. */
+    void cancel() {
+        _cancelled.set(true);
+    }
+
+    /** Print the progress of the search on the standard error. */
+    void report() {
+        long total = _positions * _orders.size();
+        System.err.printf("searched %d of %d settings%n", _tried.get(), total);
+    }
+
+    /** Return the number of candidate settings tried so far. */
+    long tried() {
+        return _tried.get();
+    }
+
+    /** Search the rotor orders handed out by NEXTORDER on a private
+     *  machine, returning the best candidates found. */
+    private Best runWorker(AtomicInteger nextOrder) {
+        Machine machine = newMachine();
+        Best best = new Best(_best);
+        int[] settings = new int[_numRotors];
+        int[] counts = new int[_alphabet.size()];
+        int size = _alphabet.size();
+        for (int order = nextOrder.getAndIncrement();
+             order < _orders.size() && !_cancelled.get();
+             order = nextOrder.getAndIncrement()) {
+            machine.insertRotors(_orders.get(order));
+            long tried = 0;
+            for (long code = 0; code < _positions; code++) {
+                long rest = code;
+                for (int i = _numRotors - 1; i > 0; i--) {
+                    settings[i] = (int) (rest % size);
+                    rest /= size;
+                }
+                machine.restoreSettings(settings);
+                best.offer(score(machine, counts), order, code);
+                tried += 1;
+                if (tried == PROGRESS_INTERVAL) {
+                    _tried.addAndGet(tried);
+                    tried = 0;
+                    if (_cancelled.get()) {
+                        break;
+                    }
+                }
+            }
+            _tried.addAndGet(tried);
+        }
+        return best;
+    }
+
+    /** Return the index of coincidence of the decryption of _cipher by
+     *  MACHINE from its current settings, using COUNTS (one entry per
+     *  alphabet character) as scratch space. */
+    private double score(Machine machine, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int c : _cipher) {
+            counts[machine.convert(c)] += 1;
+        }
+        long n = _cipher.length;
+        if (n < 2) {
+            return 0.0;
+        }
+        long sum = 0;
+        for (int count : counts) {
+            sum += (long) count * (count - 1);
+        }
+        return (double) sum / (n * (n - 1));
+    }
+
+    /** Return every rotor order that MACHINE's configuration allows: a
+     *  reflector in slot 0, distinct non-moving rotors in the slots
+     *  without pawls, and distinct moving rotors in the slots with
+     *  pawls, as arrays of rotor names that insertRotors accepts. */
+    static List<String[]> rotorOrders(Machine machine) {
+        List<String> reflectors = new ArrayList<>();
+        List<String> fixed = new ArrayList<>();
+        List<String> moving = new ArrayList<>();
+        for (Rotor rotor : machine.getAllRotors()) {
+            if (rotor instanceof Reflector) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        List<String[]> orders = new ArrayList<>();
+        addOrders(orders, new String[machine.numRotors()], 0,
+                  machine.numRotors() - machine.numPawls(),
+                  reflectors, fixed, moving);
+        return orders;
+    }
+
+    /** Add to ORDERS every rotor order that completes ORDER, whose
+     *  first SLOT entries are filled in, using a reflector from
+     *  REFLECTORS in slot 0, non-moving rotors from FIXED in slots 1
+     *  through FIRSTMOVING - 1, and rotors from MOVING in the rest. */
+    private static void addOrders(List<String[]> orders, String[] order,
+                                  int slot, int firstMoving,
+                                  List<String> reflectors,
+                                  List<String> fixed, List<String> moving) {
+        if (slot == order.length) {
+            orders.add(order.clone());
+            return;
+        }
+        List<String> choices;
+        if (slot == 0) {
+            choices = reflectors;
+        } else if (slot < firstMoving) {
+            choices = fixed;
+        } else {
+            choices = moving;
+        }
+        for (String name : choices) {
+            if (!Arrays.asList(order).subList(0, slot).contains(name)) {
+                order[slot] = name;
+                addOrders(orders, order, slot + 1, firstMoving,
+                          reflectors, fixed, moving);
+            }
+        }
+    }
+
+    /** Return a new machine configured from _config.  Each worker has
+     *  its own, since rotors carry their settings. */
+    private Machine newMachine() {
+        return new Main(new Scanner(_config), null, null).readConfig();
+    }
+
+    /** Return the setting line selecting rotor order number ORDER at the
+     *  settings numbered CODE. */
+    private String settingLine(int order, long code) {
+        char[] setting = new char[_numRotors - 1];
+        for (int i = setting.length - 1; i >= 0; i--) {
+            setting[i] = _alphabet.toChar((int) (code % _alphabet.size()));
+            code /= _alphabet.size();
+        }
+        return "* " + String.join(" ", _orders.get(order)) + " "
+            + new String(setting);
+    }
+
+    /** The best candidates seen by one worker, kept as a bounded
+     *  min-heap on score in parallel primitive arrays, so that offering
+     *  a candidate allocates nothing.  Each worker owns its own, so no
+     *  locking is needed; they are merged once the workers finish. */
+    private final class Best {
+
+        /** An empty collection holding at most CAPACITY candidates. */
+        Best(int capacity) {
+            _scores = new double[capacity];
+            _order = new int[capacity];
+            _codes = new long[capacity];
+        }
+
+        /** Add the candidate with SCORE, at rotor order ORDER and
+         *  settings CODE, if it is among the best seen. */
+        void offer(double score, int order, long code) {
+            if (_size < _scores.length) {
+                _size += 1;
+                siftUp(_size - 1, score, order, code);
+            } else if (score > _scores[0]) {
+                siftDown(0, score, order, code);
+            }
+        }
+
+        /** Add all candidates in OTHER. */
+        void addAll(Best other) {
+            for (int i = 0; i < other._size; i++) {
+                offer(other._scores[i], other._order[i], other._codes[i]);
+            }
+        }
+
+        /** Return descriptions of my candidates, best first. */
+        List<String> describe() {
+            Integer[] byScore = new Integer[_size];
+            for (int i = 0; i < _size; i++) {
+                byScore[i] = i;
+            }
+            Arrays.sort(byScore,
+                        (a, b) -> Double.compare(_scores[b], _scores[a]));
+            List<String> result = new ArrayList<>();
+            for (int i : byScore) {
+                result.add(String.format("%.5f %s", _scores[i],
+                                         settingLine(_order[i], _codes[i])));
+            }
+            return result;
+        }
+
+        /** Place the candidate (SCORE, ORDER, CODE) at heap slot K or
+         *  above it. */
+        private void siftUp(int k, double score, int order, long code) {
+            while (k > 0) {
+                int parent = (k - 1) / 2;
+                if (_scores[parent] <= score) {
+                    break;
+                }
+                put(k, _scores[parent], _order[parent], _codes[parent]);
+                k = parent;
+            }
+            put(k, score, order, code);
+        }
+
+        /** Place the candidate (SCORE, ORDER, CODE) at heap slot K or
+         *  below it. */
+        private void siftDown(int k, double score, int order, long code) {
+            while (2 * k + 1 < _size) {
+                int child = 2 * k + 1;
+                if (child + 1 < _size && _scores[child + 1] < _scores[child]) {
+                    child += 1;
+                }
+                if (score <= _scores[child]) {
+                    break;
+                }
+                put(k, _scores[child], _order[child], _codes[child]);
+                k = child;
+            }
+            put(k, score, order, code);
+        }
+
+        /** Store (SCORE, ORDER, CODE) in slot K. */
+        private void put(int k, double score, int order, long code) {
+            _scores[k] = score;
+            _order[k] = order;
+            _codes[k] = code;
+        }
+
+        /** Scores of my candidates. */
+        private final double[] _scores;
+
+        /** Rotor order numbers of my candidates. */
+        private final int[] _order;
+
+        /** Setting numbers of my candidates. */
+        private final long[] _codes;
+
+        /** Number of candidates held. */
+        private int _size;
+    }
+
+    /** Number of candidates reported by default. */
+    private static final int DEFAULT_BEST = 10;
+
+    /** Number of settings a worker tries between progress updates. */
+    private static final long PROGRESS_INTERVAL = 4096;
+
+    /** Text of the machine configuration. */
+    private final String _config;
+
+    /** Alphabet of the configured machine. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots of the configured machine. */
+    private final int _numRotors;
+
+    /** Alphabet indices of the ciphertext. */
+    private final int[] _cipher;
+
+    /** Number of candidates to keep. */
+    private final int _best;
+
+    /** Number of worker threads. */
+    private final int _threads;
+
+    /** All rotor orders to try. */
+    private final List<String[]> _orders;
+
+    /** Number of rotor settings for each rotor order. */
+    private long _positions;
+
+    /** Set when the search is to stop early. */
+    private final AtomicBoolean _cancelled = new AtomicBoolean();
+
+    /** Number of candidates tried so far. */
+    private final AtomicLong _tried = new AtomicLong();
+}
@@ -1,9 +1,11 @@
 package enigma;
 
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
+
+import static enigma.EnigmaException.*;
 
 /** Class that represents a complete enigma machine.
  *  @author Osvaldo Valadez
@@ -21,8 +23,8 @@ class Machine {
     /** Create a copy of the array of rotors. */
     private Rotor[] _rotors;
 
-    /** Create a copy of the trackmap. */
-    private HashMap<String, Rotor> _trackmap;
+    /** The available rotors, by name. */
+    private RotorCatalog _catalog;
 
     /**
      * A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
@@ -35,7 +37,13 @@ class Machine {
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = allRotors;
-
+        if (allRotors instanceof RotorCatalog) {
+            _catalog = (RotorCatalog) allRotors;
+        } else {
+            _catalog = new RotorCatalog(allRotors);
+        }
+        _moving = new int[numRotors];
+        _rotates = new boolean[numRotors];
     }
 
     /**
@@ -59,17 +67,15 @@ class Machine {
      */
     void insertRotors(String[] rotors) {
         _rotors = new Rotor[_numRotors];
-        _trackmap = new HashMap<>();
-        for (Rotor x : _allRotors) {
-            String name = x.name();
-            _trackmap.put(name, x);
-        }
         for (int x = 0; x < numRotors(); x++) {
-            String val = rotors[x];
-            if (_trackmap.containsKey(val.toUpperCase())) {
-                _rotors[x] = _trackmap.get(val);
+            _rotors[x] = _catalog.get(rotors[x].toUpperCase());
+            if (_rotors[x] == null) {
+                throw error("unknown rotor %s", rotors[x]);
             }
+            _rotors[x].insertedIn(this);
+            _rotates[x] = _rotors[x].rotates();
         }
+        _stale = true;
     }
 
     /**
@@ -78,13 +84,70 @@ class Machine {
      * to the leftmost rotor setting (not counting the reflector).
      */
     void setRotors(String setting) {
+        setRotors(setting, null);
+    }
+
+    /**
+     * Set my rotors according to SETTING, as for setRotors(SETTING), and
+     * their ring settings according to RINGS, which is a string of
+     * numRotors()-1 characters in my alphabet, also starting with the
+     * leftmost rotor.  A null RINGS gives every rotor ring setting 0.
+     */
+    void setRotors(String setting, String rings) {
         if (setting.length() != numRotors() - 1) {
             throw new AssertionError("Not proper setting");
         }
+        if (rings != null && rings.length() != numRotors() - 1) {
+            throw error("ring setting %s has the wrong length", rings);
+        }
         for (int i = 1; i < numRotors(); i++) {
+            if (rings == null) {
+                _rotors[i].setRing(0);
+            } else if (_alphabet.contains(rings.charAt(i - 1))) {
+                _rotors[i].setRing(_alphabet.toInt(rings.charAt(i - 1)));
+            } else {
+                throw error("bad ring setting: %s", rings);
+            }
             _rotors[i].set(setting.charAt(i - 1));
         }
     }
+
+    /** Store the current settings of my rotors into SETTINGS, an array
+     *  of length numRotors() whose entry #0 belongs to the reflector.
+     *  Allocates nothing, so that callers trying many settings can
+     *  reuse one array. */
+    void saveSettings(int[] settings) {
+        for (int i = 0; i < numRotors(); i++) {
+            settings[i] = _rotors[i].setting();
+        }
+    }
+
+    /** Restore the rotor settings previously stored by saveSettings
+     *  into SETTINGS.  The reflector's entry is ignored. */
+    void restoreSettings(int[] settings) {
+        for (int i = 1; i < numRotors(); i++) {
+            _rotors[i].set(settings[i]);
+        }
+    }
+    /** Rekey me for a message that starts with its key enciphered at a
+     *  ground setting: set my rotors to GROUND, settings as saved by
+     *  saveSettings, decipher the key, INDICES[START .. START +
+     *  numRotors() - 2], in place, and set my rotors to it, the first
+     *  index being the setting of the leftmost rotor, as in a setting
+     *  line.  Rotor order, ring settings, and plugboard are unchanged.
+     *  Allocates nothing, so that a message costs only the conversions
+     *  of its key and text. */
+    void rekey(int[] ground, int[] indices, int start) {
+        restoreSettings(ground);
+        int end = start + numRotors() - 1;
+        for (int i = start; i < end; i++) {
+            indices[i] = convert(indices[i]);
+        }
+        for (int i = 1; i < numRotors(); i++) {
+            _rotors[i].set(indices[start + i - 1]);
+        }
+    }
+
     /** Copy of plugboard. */
     private Permutation _plugboard;
 
@@ -102,15 +165,9 @@ class Machine {
      * the machine.
      */
     int convert(int c) {
-        /** Advancing the machine */
-
-        /** Start from the right and move the setting forward and move left */
         move();
-        for (Rotor i : iNeedAderall) {
-            i.advance();
-        }
         if (_plugboard != null) {
-            c = _plugboard.permute(_plugboard.wrap(c));
+            c = _plugboard.permute(c);
         }
         for (int x = _rotors.length - 1; x >= 0; x--) {
             c = _rotors[x].convertForward(c);
@@ -119,11 +176,47 @@ class Machine {
             c = _rotors[i].convertBackward(c);
         }
         if (_plugboard != null) {
-            c = _plugboard.permute(_plugboard.wrap(c));
+            c = _plugboard.permute(c);
         }
         return c;
     }
 
+    /** Advance my rotors as converting N characters would, without
+     *  converting anything.  While no slot is engaged, the rightmost
+     *  rotor jumps straight to its next notch, so that the cost is in
+     *  the number of carries, not in N. */
+    void advance(long n) {
+        if (_stale) {
+            recount();
+        }
+        int last = numRotors() - 1;
+        Rotor right = _rotors[last];
+        while (n > 0) {
+            if (_engagedCount > 0) {
+                carry();
+                n -= 1;
+            } else {
+                long k = _rotates[last - 1]
+                    ? Math.min(n, right.untilNotch()) : n;
+                right.advance((int) (k % right.size()));
+                refresh(last - 1);
+                n -= k;
+            }
+        }
+    }
+
+    /** Convert each remaining byte of BUFFER in place, taking its
+     *  unsigned value as an alphabet index, exactly as convert(int)
+     *  would, and leave the rotors at their final settings.  My
+     *  alphabet must have 256 characters.  See ByteConverter. */
+    void convert(ByteBuffer buffer) {
+        if (_alphabet.size() != ByteConverter.SIZE) {
+            throw error("byte conversion needs %d characters",
+                        ByteConverter.SIZE);
+        }
+        new ByteConverter(this).convert(buffer);
+    }
+
     /**
      * Returns the encoding/decoding of MSG, updating the state of
      * the rotors accordingly.
@@ -143,26 +236,96 @@ class Machine {
      */
     private final Alphabet _alphabet;
 
-    /** Return a copy of my hashset. */
-    private HashSet<Rotor> iNeedAderall;
+    /** Note that one of my rotors was set other than by my stepping,
+     *  so that which slots are engaged must be found again before the
+     *  next step. */
+    void rotorSet() {
+        _stale = true;
+    }
 
-    /** Move the rotors. */
+    /** Move the rotors.  Every rotor whose right neighbor is at a notch
+     *  advances together with that neighbor, and the rightmost rotor
+     *  always advances.  Call slot X engaged if its rotor rotates and
+     *  its right neighbor is at a notch.  The engaged slots are kept up
+     *  to date from step to step, and only the slots beside rotors that
+     *  moved can change, so that while none is engaged, as is nearly
+     *  always the case, a step costs the same however many rotors
+     *  there are. */
     private void move() {
-        iNeedAderall = new HashSet<Rotor>();
-        for (int x = numRotors() - 1; x > 0; x--) {
-            if (x == numRotors() - 1) {
-                iNeedAderall.add(_rotors[x]);
-            } else if (x == numRotors() - 2
-                    && _rotors[x].rotates() && _rotors[x + 1].atNotch()) {
-                iNeedAderall.add(_rotors[x]);
-            } else {
-                if (_rotors[x].rotates() && _rotors[x + 1].atNotch()) {
-                    iNeedAderall.add(_rotors[x]);
-                    iNeedAderall.add(_rotors[x + 1]);
-                }
+        if (_stale) {
+            recount();
+        }
+        if (_engagedCount > 0) {
+            carry();
+        } else {
+            int last = numRotors() - 1;
+            _rotors[last].advance();
+            refresh(last - 1);
+        }
+    }
+
+    /** Move the rotors when some slot is engaged: the rotor in each
+     *  engaged slot and its right neighbor advance, as does the
+     *  rightmost rotor, each once. */
+    private void carry() {
+        int last = numRotors() - 1, n = 0;
+        for (int x = _engaged.nextSetBit(1); x >= 0;
+             x = _engaged.nextSetBit(x + 1)) {
+            if (n == 0 || _moving[n - 1] != x) {
+                _moving[n++] = x;
             }
+            _moving[n++] = x + 1;
+        }
+        if (_moving[n - 1] != last) {
+            _moving[n++] = last;
+        }
+        for (int i = 0; i < n; i++) {
+            _rotors[_moving[i]].advance();
+        }
+        for (int i = 0; i < n; i++) {
+            refresh(_moving[i] - 1);
         }
     }
+
+    /** Find which slots are engaged from my rotors' settings. */
+    private void recount() {
+        _engaged.clear();
+        _engagedCount = 0;
+        for (int x = 1; x < numRotors() - 1; x++) {
+            refresh(x);
+        }
+        _stale = false;
+    }
+
+    /** Bring up to date whether slot X is engaged, if X is a slot that
+     *  can be: one that is neither the reflector's nor the rightmost. */
+    private void refresh(int x) {
+        if (x <= 0) {
+            return;
+        }
+        boolean engaged = _rotates[x] && _rotors[x + 1].atNotch();
+        if (engaged != _engaged.get(x)) {
+            _engaged.flip(x);
+            _engagedCount += engaged ? 1 : -1;
+        }
+    }
+
+    /** Slots that are engaged. */
+    private final BitSet _engaged = new BitSet();
+
+    /** Number of slots that are engaged. */
+    private int _engagedCount;
+
+    /** True iff some rotor was set since the engaged slots were last
+     *  found. */
+    private boolean _stale = true;
+
+    /** True for each slot whose rotor rotates. */
+    private boolean[] _rotates;
+
+    /** Slots whose rotors advance on the current carry, in order. */
+    private int[] _moving;
+
     /** Return the number of rotors @return int. */
     int getNumRotors() {
         return _numRotors;
@@ -180,16 +343,12 @@ class Machine {
     Rotor[] getRotors() {
         return _rotors;
     }
-    /** Return the number of pawls @return Hashmap<String,Rotor>. */
-    HashMap<String, Rotor> getTrackmap() {
-        return _trackmap;
-    }
     /** Return the plugboard @return Permutation. */
     Permutation getPlugboard() {
         return _plugboard;
     }
-    /** Return the @return Hashset<Rotor>. */
-    HashSet<Rotor> getHashset() {
-        return iNeedAderall;
+    /** Return my alphabet @return Alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 }
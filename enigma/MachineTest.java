@@ -0,0 +1,567 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Osvaldo Valadez
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with the naval rotors B, Beta, III, IV, and I
+     *  inserted at setting AXLE. */
+    private Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("BETA", new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        rotors.add(new MovingRotor("III", new Permutation(NAVALA.get("III"),
+                                                          UPPER), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        Machine machine = new Machine(UPPER, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "BETA", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        return machine;
+    }
+
+    /** Return a configuration with three slots, two with pawls, and the
+     *  naval rotors I, II, and III and reflectors B and C. */
+    private String smallConfig() {
+        return "ABCDEFGHIJKLMNOPQRSTUVWXYZ 3 2\n"
+            + "I MQ " + NAVALA.get("I") + "\nII ME " + NAVALA.get("II")
+            + "\nIII MV " + NAVALA.get("III") + "\nB R " + NAVALA.get("B")
+            + "\nC R " + NAVALA.get("C");
+    }
+
+    /** Return a new temporary file with name ending in SUFFIX, holding
+     *  CONTENTS, which is deleted on exit. */
+    private File tempFile(String suffix, byte[] contents) throws IOException {
+        File file = File.createTempFile("enigma", suffix);
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents);
+        return file;
+    }
+
+    /** Return the bytes of the file named NAME. */
+    private byte[] contents(String name) throws IOException {
+        return Files.readAllBytes(new File(name).toPath());
+    }
+
+    /** Return input for Main of LINES messages from WORKLOAD, each of
+     *  LENGTH characters on one line, with a setting line before every
+     *  other. */
+    private String messages(Workload workload, int lines, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (i % 2 == 0) {
+                text.append(workload.settingLine(3)).append('\n');
+            }
+            text.append(workload.message(length, length));
+        }
+        return text.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkReciprocal() {
+        Machine machine = navalMachine();
+        String cipher = machine.convert("FROMHISSHOULDERHIAWATHA");
+        machine.setRotors("AXLE");
+        assertEquals("FROMHISSHOULDERHIAWATHA", machine.convert(cipher));
+    }
+
+    @Test
+    public void checkRingSettings() {
+        Machine machine = navalMachine();
+        String plain = machine.convert("FROMHISSHOULDERHIAWATHA");
+        machine.setRotors("AXLE", "BCDE");
+        String cipher = machine.convert("FROMHISSHOULDERHIAWATHA");
+        assertFalse("ring settings should change the cipher",
+                    plain.equals(cipher));
+        machine.setRotors("AXLE", "BCDE");
+        assertEquals("FROMHISSHOULDERHIAWATHA", machine.convert(cipher));
+        machine.setRotors("AXLE", "AAAA");
+        assertEquals(plain, machine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void checkRestoreSettings() {
+        Machine machine = navalMachine();
+        int[] settings = new int[machine.numRotors()];
+        machine.saveSettings(settings);
+        String first = machine.convert("TAKEDOWNTHESAILSANDSTAY");
+        machine.restoreSettings(settings);
+        assertEquals(first, machine.convert("TAKEDOWNTHESAILSANDSTAY"));
+    }
+
+    @Test
+    public void checkRekey() {
+        Machine machine = navalMachine();
+        int[] ground = new int[machine.numRotors()];
+        machine.saveSettings(ground);
+        String indicator = machine.convert("QRST");
+        machine.setRotors("QRST");
+        String cipher = machine.convert("FROMHISSHOULDERHIAWATHA");
+        machine.convert("TAKEDOWN");
+        int[] key = UPPER.toInts("X" + indicator);
+        machine.rekey(ground, key, 1);
+        assertArrayEquals(UPPER.toInts("XQRST"), key);
+        assertEquals("FROMHISSHOULDERHIAWATHA", machine.convert(cipher));
+    }
+
+    @Test
+    public void checkManyRotorStepping() {
+        Alphabet alpha = new Alphabet("ABCD");
+        Random random = new Random(50);
+        int slots = 40;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[slots];
+        for (int i = 0; i < slots; i++) {
+            names[i] = "R" + i;
+            Permutation perm = new Permutation("(AB) (CD)", alpha);
+            if (i == 0) {
+                rotors.add(new Reflector(names[i], perm));
+            } else if (i < 3) {
+                rotors.add(new FixedRotor(names[i], perm));
+            } else {
+                rotors.add(new MovingRotor(names[i], perm,
+                                           random.nextBoolean() ? "AC"
+                                           : "D"));
+            }
+        }
+        Machine machine = new Machine(alpha, slots, slots - 3, rotors);
+        machine.insertRotors(names);
+        Rotor[] inserted = machine.getRotors();
+        int[] expected = new int[slots];
+        for (int step = 0; step < 20000; step++) {
+            if (step % 997 == 0) {
+                int x = 1 + random.nextInt(slots - 1);
+                inserted[x].set(random.nextInt(4));
+                expected[x] = inserted[x].setting();
+            }
+            int n = step % 50 == 0 ? random.nextInt(100) : 1;
+            for (int k = 0; k < n; k++) {
+                boolean[] moves = new boolean[slots];
+                moves[slots - 1] = true;
+                for (int x = slots - 2; x > 0; x--) {
+                    if (inserted[x].rotates()
+                        && inserted[x + 1].notchTable()[expected[x + 1]]) {
+                        moves[x] = moves[x + 1] = true;
+                    }
+                }
+                for (int x = 3; x < slots; x++) {
+                    expected[x] = (expected[x] + (moves[x] ? 1 : 0)) % 4;
+                }
+            }
+            machine.advance(n);
+            for (int x = 1; x < slots; x++) {
+                assertEquals("step " + step + " slot " + x, expected[x],
+                             inserted[x].setting());
+            }
+        }
+    }
+
+    @Test
+    public void checkRotorErrors() {
+        for (String bad : new String[] {"IV MJ (ABC", "IV MJ (A(BC))",
+                                        "IV MJ (AB1)", "IV XJ (AB)"}) {
+            try {
+                new Main(new Scanner(smallConfig() + "\n" + bad), null, null)
+                    .readConfig();
+                fail("unused rotor " + bad + " not checked");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage(),
+                           excp.getMessage().contains("rotor IV"));
+            }
+        }
+        Machine machine = new Main(new Scanner(smallConfig()), null, null)
+            .readConfig();
+        try {
+            machine.insertRotors(new String[] {"B", "I", "VIII"});
+            fail("unknown rotor inserted");
+        } catch (EnigmaException excp) {
+            assertEquals("unknown rotor VIII", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkPlugboardSearch() {
+        String plain = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF"
+            + " ROSEWOOD MADE OF SLIDING FOLDING ROSEWOOD NEATLY PUT IT ALL"
+            + " TOGETHER IN ITS CASE IT LAY COMPACTLY FOLDED INTO NEARLY"
+            + " NOTHING BUT HE OPENED OUT THE HINGES PUSHED AND PULLED THE"
+            + " JOINTS AND HINGES TILL IT LOOKED ALL SQUARES AND OBLONGS"
+            + " LIKE A COMPLICATED FIGURE IN THE SECOND BOOK OF EUCLID";
+        String config = smallConfig();
+        Main main = new Main(new Scanner(config), null, null);
+        Machine machine = main.readConfig();
+        main.setUp(machine, "* B I II QD (AQ) (ZH) (MX)");
+        String cipher = machine.convert(plain.replace(" ", ""));
+        PlugboardSearch search =
+            new PlugboardSearch(config, cipher, "* B I II QD",
+                                new NGrams(UPPER, 3, plain));
+        try {
+            search.plugboard();
+            fail("plugboard reported before a search");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        search.search(4, 1);
+        assertEquals("(AQ) (HZ) (MX)", search.plugboard());
+        assertEquals("* B I II QD (AQ) (HZ) (MX)", search.settingLine());
+    }
+
+    @Test
+    public void checkKeySearch() {
+        String plain = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF"
+            + " ROSEWOOD MADE OF SLIDING FOLDING ROSEWOOD NEATLY PUT IT ALL"
+            + " TOGETHER IN ITS CASE IT LAY COMPACTLY FOLDED INTO NEARLY"
+            + " NOTHING BUT HE OPENED OUT THE HINGES PUSHED AND PULLED THE"
+            + " JOINTS AND HINGES TILL IT LOOKED ALL SQUARES AND OBLONGS"
+            + " LIKE A COMPLICATED FIGURE IN THE SECOND BOOK OF EUCLID";
+        String config = smallConfig();
+        Main main = new Main(new Scanner(config), null, null);
+        Machine machine = main.readConfig();
+        main.setUp(machine, "* C III I KD");
+        String cipher = machine.convert(plain.replace(" ", ""));
+        KeySearch search = new KeySearch(config, cipher, 3, 2);
+        List<String> found = search.search();
+        assertEquals(3, found.size());
+        assertTrue(found.toString(),
+                   found.get(0).endsWith(" * C III I KD"));
+        assertEquals(2 * 3 * 2 * 26 * 26, search.tried());
+        KeySearch cancelled = new KeySearch(config, cipher, 3, 2);
+        cancelled.cancel();
+        assertTrue(cancelled.search().isEmpty());
+        assertEquals(0, cancelled.tried());
+    }
+
+    @Test
+    public void checkStatisticsSections() throws IOException {
+        Workload workload = new Workload(29, 26, 5, 3, 5);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append(i % 7 == 3 ? "  " : "").append(workload.settingLine(3))
+                .append('\n').append(workload.message(50 * i, 12));
+            if (i % 9 == 4) {
+                text.append("SOME TEXT * THEN A SETTING\nhere abc\n");
+            }
+        }
+        List<Long> expected = new ArrayList<>();
+        for (String line : text.toString().split("\n")) {
+            if (line.contains("*")) {
+                expected.add(0L);
+            } else {
+                int last = expected.size() - 1;
+                expected.set(last, expected.get(last)
+                             + line.replaceAll("[^A-Za-z]", "").length());
+            }
+        }
+        File file = File.createTempFile("enigma", ".in");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.toString().getBytes("US-ASCII"));
+        for (int threads : new int[] {1, 3, 8}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new Statistics(UPPER, file.getPath())
+                .report(new PrintStream(bytes), threads);
+            String[] lines = bytes.toString().split("\n");
+            for (int k = 0; k < expected.size(); k++) {
+                assertTrue(lines[k], lines[k].startsWith("section " + (k + 1))
+                           && lines[k].contains(": " + expected.get(k)
+                                                + " characters"));
+            }
+            assertTrue(lines[expected.size()],
+                       lines[expected.size()].startsWith(
+                           "total: " + expected.size() + " sections"));
+        }
+    }
+
+    @Test
+    public void checkCribSearch() throws IOException {
+        Machine machine = navalMachine();
+        String cipher = machine.convert("XXXXFROMHISSHOULDERHIAWATHA");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long found = new CribSearch(UPPER, "fromhisshoulder")
+            .search(new StringReader(cipher), new PrintStream(bytes));
+        String[] offsets = bytes.toString().split("\n");
+        assertEquals(found, offsets.length);
+        assertTrue("true placement should be found",
+                   Arrays.asList(offsets).contains("4"));
+        for (int k = 0; k + 15 <= cipher.length(); k++) {
+            boolean fits = true;
+            for (int j = 0; j < 15; j++) {
+                fits &= cipher.charAt(k + j)
+                    != "FROMHISSHOULDER".charAt(j);
+            }
+            assertEquals(fits, Arrays.asList(offsets).contains("" + k));
+        }
+    }
+
+    @Test
+    public void checkCycleCatalog() throws IOException {
+        String config = smallConfig();
+        File file = File.createTempFile("enigma", ".catalog");
+        file.deleteOnExit();
+        CycleCatalog.build(config, file.getPath(), 2);
+        Machine machine = new Main(new Scanner(config), null, null)
+            .readConfig();
+        machine.insertRotors(new String[] {"C", "III", "I"});
+        machine.setPlugboard(new Permutation("(AQ) (ZH) (MX)", UPPER));
+        Random random = new Random(61);
+        StringBuilder indicators = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            String key = "" + UPPER.toChar(random.nextInt(26))
+                + UPPER.toChar(random.nextInt(26));
+            machine.setRotors("KD");
+            indicators.append(machine.convert(key + key)).append(' ');
+        }
+        CycleCatalog catalog = CycleCatalog.load(file.getPath());
+        List<String> found =
+            catalog.lookup(catalog.signature(indicators.toString()));
+        assertTrue(found.toString(), found.contains("* C III I KD"));
+    }
+
+    @Test
+    public void checkVerifier() {
+        String config = smallConfig();
+        Main main = new Main(new Scanner(config), null, null);
+        Machine machine = main.readConfig();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Verifier verifier = new Verifier(config, EngineChoice.AUTO,
+                                         TableStorage.HEAP, false,
+                                         new PrintStream(errors));
+        for (String setting : new String[] {"* B I II AB", "* C III I XY"}) {
+            main.setUp(machine, setting);
+            verifier.section(setting);
+            for (int line = 0; line < 3; line++) {
+                int[] text = UPPER.toInts("FROMHISSHOULDERHIAWATHA");
+                verifier.input(text, text.length);
+                for (int i = 0; i < text.length; i++) {
+                    text[i] = machine.convert(text[i]);
+                }
+                if (setting.contains("C") && line == 2) {
+                    text[5] = (text[5] + 1) % UPPER.size();
+                }
+                verifier.output(text, 0, text.length);
+            }
+        }
+        try {
+            verifier.finish();
+            fail("mismatch not found");
+        } catch (EnigmaException excp) {
+            assertEquals("verify: section 2 (* C III I XY): mismatch at"
+                         + " character 51", errors.toString().trim());
+        }
+    }
+
+    @Test
+    public void checkMatchesReference() {
+        Map<String, Differential.Engine> engines =
+            new LinkedHashMap<>(Differential.ENGINES);
+        engines.remove("compiled");
+        Differential check = new Differential(engines, 0);
+        Differential.Case failure = check.run(0, 500, 1);
+        assertNull(failure == null ? "" : check.describe(failure), failure);
+    }
+
+    @Test
+    public void checkCompiledMatchesReference() {
+        Map<String, Differential.Engine> engines = new LinkedHashMap<>();
+        engines.put("reference", Differential.ENGINES.get("reference"));
+        engines.put("compiled", Differential.ENGINES.get("compiled"));
+        Differential check = new Differential(engines, 0);
+        Differential.Case failure = check.run(0, 100, 1);
+        assertNull(failure == null ? "" : check.describe(failure), failure);
+    }
+
+    @Test
+    public void checkBytesMatchReference() {
+        Map<String, Differential.Engine> engines =
+            new LinkedHashMap<>(Differential.ENGINES);
+        engines.remove("compiled");
+        Differential check = new Differential(engines, 1);
+        Differential.Case failure = check.run(0, 40, 1);
+        assertNull(failure == null ? "" : check.describe(failure), failure);
+    }
+
+    @Test
+    public void checkTableStorage() {
+        Map<String, Differential.Engine> engines = new LinkedHashMap<>();
+        for (String storage : new String[] {TableStorage.HEAP,
+                                            TableStorage.DIRECT,
+                                            TableStorage.MAPPED}) {
+            engines.put(storage, Differential.table(storage));
+        }
+        Differential check = new Differential(engines, 4);
+        Differential.Case failure = check.run(0, 200, 1);
+        assertNull(failure == null ? "" : check.describe(failure), failure);
+    }
+
+    @Test
+    public void checkByteConverter() {
+        Workload workload = new Workload(36, ByteConverter.SIZE, 5, 3, 3);
+        String config = workload.config();
+        String setting = workload.settingLine(10);
+        Main main = new Main(new Scanner(config), null, null);
+        Machine machine = main.readConfig();
+        main.setUp(machine, setting);
+        Main other = new Main(new Scanner(config), null, null);
+        Machine copy = other.readConfig();
+        other.setUp(copy, setting);
+        Random random = new Random(36);
+        byte[] text = new byte[50000];
+        random.nextBytes(text);
+        ByteBuffer buffer = ByteBuffer.wrap(text.clone());
+        int from = 0;
+        for (int cut : new int[] {7, 20000, text.length}) {
+            buffer.position(from).limit(cut);
+            machine.convert(buffer);
+            from = cut;
+        }
+        for (int i = 0; i < text.length; i++) {
+            assertEquals("character " + i,
+                         copy.convert(text[i] & (ByteConverter.SIZE - 1)),
+                         buffer.get(i) & (ByteConverter.SIZE - 1));
+        }
+        int[] settings = new int[machine.numRotors()];
+        int[] expected = new int[copy.numRotors()];
+        machine.saveSettings(settings);
+        copy.saveSettings(expected);
+        assertArrayEquals(expected, settings);
+    }
+
+    @Test
+    public void checkCheckpointRestores() throws IOException {
+        Machine machine = navalMachine();
+        machine.setRotors("AXLE", "BCDE");
+        machine.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        machine.convert("FROMHISSHOULDERHIAWATHA");
+        File file = File.createTempFile("enigma", ".checkpoint");
+        file.deleteOnExit();
+        new Checkpoint(machine, 3, 4, "* B BETA III IV I AXLE")
+            .write(file.getPath());
+        Checkpoint checkpoint = Checkpoint.read(file.getPath());
+        assertEquals(3, checkpoint.input());
+        assertEquals(4, checkpoint.output());
+        assertEquals("* B BETA III IV I AXLE", checkpoint.setting());
+        Machine copy = navalMachine();
+        copy.insertRotors(new String[] {"B", "BETA", "I", "IV", "III"});
+        checkpoint.restore(copy);
+        assertEquals(machine.convert("TAKEDOWNTHESAILSANDSTAY"),
+                     copy.convert("TAKEDOWNTHESAILSANDSTAY"));
+    }
+
+    @Test
+    public void checkFollowInputStream() throws IOException {
+        File file = tempFile(".in", "FROM HIS".getBytes("US-ASCII"));
+        int[] idles = {0};
+        FollowInputStream in =
+            new FollowInputStream(new FileInputStream(file), file.toPath(),
+                                  0, () -> {
+                    idles[0] += 1;
+                    try {
+                        Files.write(file.toPath(),
+                                    " SHOULDER".getBytes("US-ASCII"),
+                                    StandardOpenOption.APPEND);
+                    } catch (IOException excp) {
+                        throw new UncheckedIOException(excp);
+                    }
+                });
+        byte[] buffer = new byte[64];
+        int n = in.read(buffer, 0, buffer.length);
+        assertEquals("FROM HIS", new String(buffer, 0, n, "US-ASCII"));
+        assertEquals(0, idles[0]);
+        n = in.read(buffer, 0, buffer.length);
+        assertEquals(" SHOULDER", new String(buffer, 0, n, "US-ASCII"));
+        assertEquals(1, idles[0]);
+        in.close();
+    }
+
+    @Test
+    public void checkShards() throws IOException {
+        Workload workload = new Workload(39, 26, 5, 3, 5);
+        String config =
+            tempFile(".conf", workload.config().getBytes("US-ASCII"))
+            .getPath();
+        String input =
+            tempFile(".in", messages(workload, 3, 2000).getBytes("US-ASCII"))
+            .getPath();
+        String single = tempFile(".out", new byte[0]).getPath();
+        String sharded = tempFile(".out", new byte[0]).getPath();
+        new Main(new String[] {config, input, single}).process();
+        new Main(new String[] {"--workers=2", config, input, sharded})
+            .process();
+        assertArrayEquals(contents(single), contents(sharded));
+    }
+
+    @Test
+    public void checkGzip() throws IOException {
+        Workload workload = new Workload(40, 26, 5, 3, 5);
+        String config =
+            tempFile(".conf", workload.config().getBytes("US-ASCII"))
+            .getPath();
+        byte[] text = messages(workload, 4, 3000).getBytes("US-ASCII");
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(packed)) {
+            gzip.write(text);
+        }
+        String plain = tempFile(".in", text).getPath();
+        String compressed = tempFile(".gz", packed.toByteArray()).getPath();
+        String expected = tempFile(".out", new byte[0]).getPath();
+        String output = tempFile(".out.gz", new byte[0]).getPath();
+        new Main(new String[] {config, plain, expected}).process();
+        new Main(new String[] {"--gzip", config, compressed, output})
+            .process();
+        try (InputStream in =
+             new GZIPInputStream(new FileInputStream(output))) {
+            assertArrayEquals(contents(expected), in.readAllBytes());
+        }
+        String truncated =
+            tempFile(".gz", Arrays.copyOf(packed.toByteArray(),
+                                          packed.size() / 2)).getPath();
+        try {
+            new Main(new String[] {config, truncated, output}).process();
+            fail("truncated input not reported");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(),
+                       excp.getMessage().startsWith("could not read input"));
+        }
+    }
+
+}
@@ -1,14 +1,25 @@
 package enigma;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static enigma.EnigmaException.*;
 
@@ -25,10 +36,15 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  Options starting with "--" may appear
+     *  anywhere in ARGS and are not counted (see Options). */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            Main main = new Main(args);
+            main.process();
+            if (main._options.stats()) {
+                main._metrics.print(System.err);
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -38,24 +54,117 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
-        if (args.length < 1 || args.length > 3) {
-            throw error("Only 1, 2, or 3 command-line arguments allowed");
+        _log = System.err;
+        _options = new Options(args);
+        _config = getInput(_options.config());
+        if (_options.resume()) {
+            _resumeFrom = Checkpoint.read(_options.checkpoint());
         }
 
-        _config = getInput(args[0]);
-
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        _charset = Charset.defaultCharset();
+        String input = _options.input();
+        if (input != null) {
+            _inputFile = (FileInputStream) getInputStream(input);
+            _inputStream = _inputFile;
+            _strict = true;
+            _compressed = _options.rawKey() == null ? gzipped(input)
+                : input.endsWith(".gz");
+        } else if (_options.rawKey() == null) {
+            _inputStream = new BufferedInputStream(System.in);
+            _compressed = gzipped(_inputStream);
         } else {
-            _input = new Scanner(System.in);
+            _inputStream = System.in;
         }
+        _options.checkCompression(_compressed);
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
+        if (_options.output() != null) {
+            _output = getOutput(_options.output());
         } else {
             _output = System.out;
         }
+        _checkpoints = new Checkpoints(_options.checkpoint(), _outputFile,
+                                       this::flushOutput);
+        if (_options.gzip()) {
+            try {
+                _gzipOutput = new GZIPOutputStream(
+                    _outputFile != null ? _outputFile : System.out,
+                    BUFFER_SIZE, true);
+            } catch (IOException excp) {
+                throw error("could not compress output");
+            }
+            _output = new PrintStream(_gzipOutput);
+        }
+
+        if (_resumeFrom != null) {
+            _checkpoints.seek(_resumeFrom, _inputFile);
+        }
+        if (_options.follow()) {
+            try {
+                _inputStream = new FollowInputStream(_inputFile,
+                                                     Paths.get(input),
+                                                     _options.latency(),
+                                                     this::flushOutput);
+            } catch (IOException excp) {
+                throw error("could not follow %s", input);
+            }
+        }
+        if (_compressed) {
+            try {
+                _inputStream = new ReadAheadInputStream(
+                    new GZIPInputStream(_inputStream, BUFFER_SIZE));
+            } catch (IOException excp) {
+                throw error("could not decompress input");
+            }
+        }
+    }
+
+    /** Return true iff the file named NAME starts as a gzip file does. */
+    private static boolean gzipped(String name) {
+        try (InputStream in = new BufferedInputStream(
+                 new FileInputStream(name))) {
+            return gzipped(in);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return true iff IN, which must support marks, starts as a gzip
+     *  file does, without consuming anything. */
+    private static boolean gzipped(InputStream in) {
+        try {
+            in.mark(2);
+            int magic = in.read() | (in.read() << Byte.SIZE);
+            in.reset();
+            return magic == GZIPInputStream.GZIP_MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
 
+    /** A Main reading its configuration from CONFIG and messages from
+     *  INPUT, and writing to OUTPUT.  Used by tools in this package that
+     *  need a configured Machine without going through the command
+     *  line; INPUT and OUTPUT may be null if process() is not called. */
+    Main(Scanner config, Scanner input, PrintStream output) {
+        _config = config;
+        _input = input;
+        _output = output;
+        _options = new Options();
+        _checkpoints = new Checkpoints(null, null, this::flushOutput);
+    }
+
+    /** A Main reading its configuration from CONFIG and messages in
+     *  CHARSET from INPUT, and writing to OUTPUT, whose charset should
+     *  also be CHARSET.  Messages are read and written as bytes when
+     *  possible, as they are from the command line. */
+    Main(Scanner config, InputStream input, PrintStream output,
+         Charset charset) {
+        _config = config;
+        _inputStream = input;
+        _output = output;
+        _charset = charset;
+        _options = new Options();
+        _checkpoints = new Checkpoints(null, null, this::flushOutput);
     }
 
     /** Return a Scanner reading from the file named NAME. */
@@ -67,34 +176,220 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Return an InputStream reading from the file named NAME. */
+    private InputStream getInputStream(String name) {
+        try {
+            return new FileInputStream(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME, which is
+     *  emptied first unless a run is being resumed. */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            _outputFile = new FileOutputStream(name, _resumeFrom != null);
+            return new PrintStream(_outputFile);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Write all output so far. */
+    private void flushOutput() {
+        if (_bytes != null) {
+            _bytes.flush();
+        }
+        _output.flush();
+    }
+
+    /** Return the contents of the file named NAME. */
+    static String readFile(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Return the positive integer denoted by S. */
+    static int parseCount(String s) {
+        try {
+            int result = Integer.parseInt(s);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        throw error("bad count: %s", s);
+    }
+
+    /** Return the non-negative integer denoted by S. */
+    static long parseOffset(String s) {
+        try {
+            long result = Long.parseLong(s);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        throw error("bad offset: %s", s);
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
+    void process() {
         Machine enigma = readConfig();
+        if (_resumeFrom != null) {
+            if ((_resumeFrom.setting() == null)
+                != (_options.rawKey() != null)) {
+                throw error("checkpoint %s is for another mode",
+                            _options.checkpoint());
+            }
+            _resumeFrom.restore(enigma);
+        }
+        boolean bytes = _input == null && byteMode();
+        _options.checkMode(bytes);
+        if (_options.workers() > 0) {
+            processShards(enigma);
+        } else if (_options.rawKey() != null) {
+            processRaw(enigma);
+        } else if (bytes) {
+            if (_options.verify()) {
+                startVerifier();
+            }
+            _bytes = new ByteProcessor(this, _options, _output, _charset,
+                                       _checkpoints, _verifier, null);
+            _bytes.process(enigma,
+                           new ByteLines(_inputStream, _charset, _strict),
+                           _resumeFrom);
+            if (_verifier != null) {
+                long checked = _verifier.finish();
+                _metrics.verified(checked, _verifier.waitNanos());
+            }
+        } else {
+            if (_input == null && _strict) {
+                _input = new Scanner(Channels.newChannel(_inputStream),
+                                     _charset.name());
+            } else if (_input == null) {
+                _input = new Scanner(_inputStream, _charset.name());
+            }
+            processChars(enigma);
+            if (_input.ioException() != null) {
+                throw error("could not read input: %s",
+                            _input.ioException().getMessage());
+            }
+        }
+        Metrics.OutputFlush flush = new Metrics.OutputFlush();
+        flush.begin();
+        _output.flush();
+        if (_gzipOutput != null) {
+            try {
+                _gzipOutput.finish();
+                _gzipOutput.flush();
+            } catch (IOException excp) {
+                throw error("could not finish compressed output");
+            }
+        }
+        flush.commit();
+        _checkpoints.finish();
+    }
+
+    /** Apply ENIGMA, set up by the first line of the raw key file unless
+     *  resuming, to the input in raw mode (see RawProcessor). */
+    private void processRaw(Machine enigma) {
+        if (_alphabet.size() != BYTE_VALUES) {
+            throw error("raw mode needs an alphabet of %d characters",
+                        BYTE_VALUES);
+        }
+        if (_resumeFrom == null) {
+            Scanner key = new Scanner(readFile(_options.rawKey()));
+            if (!key.hasNextLine()) {
+                throw error("no setting line in %s", _options.rawKey());
+            }
+            setUp(enigma, key.nextLine());
+        }
+        WritableByteChannel out = _outputFile != null && !_options.gzip()
+            ? _outputFile.getChannel() : Channels.newChannel(_output);
+        RawProcessor raw = new RawProcessor(_inputStream, out,
+                                            _options.follow(), _checkpoints);
+        _metrics.sectionProcessed(raw.process(enigma));
+    }
+
+    /** Plan shards of the input by a pass of byte mode over it with
+     *  ENIGMA that converts nothing, then have Shards run workers on
+     *  them and join their outputs into the output file.  Planning
+     *  stops at the first error in the input, which is left in the last
+     *  shard, so that the output and the error reported are those of
+     *  an unsharded run. */
+    private void processShards(Machine enigma) {
+        Shards planner;
+        try {
+            planner = new Shards(_inputFile.getChannel().size(),
+                                 _options.workers());
+        } catch (IOException excp) {
+            throw error("could not read %s", _options.input());
+        }
+        _bytes = new ByteProcessor(this, _options, _output, _charset,
+                                   _checkpoints, null, planner);
+        try {
+            _bytes.process(enigma,
+                           new ByteLines(_inputStream, _charset, _strict),
+                           null);
+        } catch (EnigmaException excp) {
+            /* The worker for the last shard planned will report it. */
+        }
+        planner.run(_options.workerOptions(), _charset, _options.config(),
+                    _options.input(), _options.output(),
+                    _outputFile.getChannel());
+    }
+
+    /** Return true iff messages can be read and written as bytes: every
+     *  character of my alphabet is a single byte in my charset, which
+     *  is also that of _output. */
+    private boolean byteMode() {
+        if (_options.chars() || !ByteLines.handles(_charset)) {
+            return false;
+        }
+        String stdout = System.getProperty("sun.stdout.encoding");
+        if (_output == System.out && stdout != null
+            && !stdout.equalsIgnoreCase(_charset.name())) {
+            return false;
+        }
+        for (int i = 0; i < _alphabet.size(); i++) {
+            if (_alphabet.toChar(i) > ByteLines.maxByteChar(_charset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Apply ENIGMA to the messages in _input, sending the results to
+     *  _output. */
+    private void processChars(Machine enigma) {
         String next = _input.nextLine();
         while (_input.hasNext()) {
             String setting = next;
             if (!setting.contains("*")) {
                 throw new EnigmaException("Wrong setting format");
             }
+            Metrics.Section event = new Metrics.Section();
+            event.begin();
             setUp(enigma, setting);
+            saveGround(enigma);
+            long length = 0;
             next = (_input.nextLine());
             while (next.isEmpty()) {
                 next = " ";
             }
             while (!(next.contains("*"))) {
-                String result = enigma.convert(next.replaceAll(" ", "")
-                        .toUpperCase());
+                String result = convertMessage(enigma,
+                        next.replaceAll(" ", "").toUpperCase());
+                length += result.length();
                 if (next.isEmpty()) {
                     _output.println();
                 } else {
@@ -106,6 +401,102 @@ public final class Main {
                     next = (_input.nextLine()).toUpperCase();
                 }
             }
+            _metrics.sectionProcessed(length);
+            if (event.shouldCommit()) {
+                event.setting = setting;
+                event.length = length;
+                event.commit();
+            }
+        }
+    }
+
+    /** Return the converter _engine chooses for ENIGMA, which has just
+     *  been set up, for messages of the mean length seen so far, or null
+     *  for the rotor engine.  Chooses _engine the first time. */
+    BulkConverter converter(Machine enigma) {
+        if (_engine == null) {
+            TableStorage storage = new TableStorage(_options.storage());
+            _engine = new EngineChoice(enigma, _options.engine(), storage,
+                                       inputLength());
+            _metrics.engineChosen(_engine.toString());
+            if (_log != null && _engine.made()) {
+                _log.printf("engine: %s%n", _engine);
+            }
+            if (_verifier != null) {
+                _verifier.engine(_engine);
+            }
+            _metrics.tablesStored(storage);
+        }
+        long sections = _metrics.sections();
+        double mean = sections == 0 ? Double.POSITIVE_INFINITY
+            : (double) _metrics.characters() / sections;
+        return _engine.converter(enigma, mean);
+    }
+
+    /** Return the number of bytes of input I will read, or -1 if that
+     *  is not known in advance. */
+    private long inputLength() {
+        if (_inputFile == null || _options.follow() || _compressed) {
+            return -1;
+        }
+        try {
+            return _inputFile.getChannel().size();
+        } catch (IOException excp) {
+            return -1;
+        }
+    }
+
+    /** In indicator mode, record the ground setting of ENIGMA, which
+     *  has just been set up. */
+    void saveGround(Machine enigma) {
+        if (_options.indicators()) {
+            if (_ground == null) {
+                _ground = new int[enigma.numRotors()];
+            }
+            enigma.saveSettings(_ground);
+        }
+    }
+
+    /** In indicator mode, rekey ENIGMA from the indicator at the start
+     *  of INDICES[0 .. K - 1], alphabet indices of a message, unless
+     *  the message is empty, and return the length of the indicator (see
+     *  Machine.rekey).  Otherwise, returns 0. */
+    int rekey(Machine enigma, int[] indices, int k) {
+        int length = enigma.numRotors() - 1;
+        if (!_options.indicators() || k == 0) {
+            return 0;
+        } else if (k < length) {
+            throw error("message shorter than its indicator");
+        }
+        enigma.rekey(_ground, indices, 0);
+        return length;
+    }
+
+    /** Return the conversion of LETTERS, a message line without blanks,
+     *  by ENIGMA, rekeyed first in indicator mode, as for rekey. */
+    String convertMessage(Machine enigma, String letters) {
+        int length = enigma.numRotors() - 1;
+        if (!_options.indicators() || letters.isEmpty()) {
+            return enigma.convert(letters);
+        } else if (letters.length() < length) {
+            throw error("message shorter than its indicator");
+        }
+        int[] key = new int[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = _alphabet.toInt(letters.charAt(i));
+        }
+        enigma.rekey(_ground, key, 0);
+        return enigma.convert(letters.substring(length));
+    }
+
+    /** Start checking message lines with a Verifier of a machine
+     *  configured as mine, in the state of _resumeFrom, if any. */
+    private void startVerifier() {
+        _verifier = new Verifier(readFile(_options.config()),
+                                 _options.engine(), _options.storage(),
+                                 _options.indicators(), System.err);
+        if (_resumeFrom != null && !_options.indicators()) {
+            _verifier.restore(_resumeFrom);
         }
     }
 
@@ -119,63 +510,35 @@ public final class Main {
 
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
-    private Machine readConfig() {
+    Machine readConfig() {
+        Metrics.ConfigLoad event = new Metrics.ConfigLoad();
+        event.begin();
+        long start = System.nanoTime();
         try {
             String letters = _config.next();
             _alphabet = new Alphabet(letters);
             numRotorss = _config.nextInt();
             numPawlss = _config.nextInt();
-            ArrayList<Rotor> rotorArrayList = new ArrayList<>();
-            while (_config.hasNext()) {
-                rotorArrayList.add(readRotor());
-            }
-            return new Machine(_alphabet, numRotorss,
-                    numPawlss, rotorArrayList);
+            String rest = _config.findWithinHorizon(REST, 0);
+            RotorCatalog rotors = new RotorCatalog(
+                _alphabet, rest == null ? "" : rest);
+            Machine result = new Machine(_alphabet, numRotorss,
+                    numPawlss, rotors);
+            _metrics.configLoaded(System.nanoTime() - start);
+            event.alphabetSize = _alphabet.size();
+            event.rotors = rotors.size();
+            event.commit();
+            return result;
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
-    /** Copy of returnRotor. */
-    private Rotor returnRotor;
-
-    /** Copy of first. */
-    private char first;
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            String rotorName = _config.next().toUpperCase();
-            String settings = _config.next().toUpperCase();
-            String notchess = "";
-            for (int i = 0; i < settings.length(); i++) {
-                if (i == 0) {
-                    first = settings.charAt(0);
-                } else {
-                    notchess += settings.charAt(i);
-                }
-            }
-            String cycles = "";
-
-            while (_config.hasNext("[(].*") && _config.hasNext()) {
-                cycles += _config.next();
-            }
-            Permutation rotorPerm = new Permutation(cycles, _alphabet);
-            if (first == 'M') {
-                returnRotor = new MovingRotor(rotorName, rotorPerm, notchess);
-            } else if (first == 'N') {
-                returnRotor = new FixedRotor(rotorName, rotorPerm);
-            } else if (first == 'R') {
-                returnRotor = new Reflector(rotorName, rotorPerm);
-            }
-            return returnRotor;
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
-        }
-
-    }
-
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+     *  which must have the format specified in the assignment, except
+     *  that the rotor settings may be followed by ring settings in the
+     *  same form (as in "* B BETA III IV I AXLE BBBB (YF) (ZH)"). */
+    void setUp(Machine M, String settings) {
+        _metrics.setUpCalled();
         Scanner settingsFirst = new Scanner(settings);
         Pattern r = Pattern.compile("[*]");
         if (!settingsFirst.hasNext(r)) {
@@ -191,18 +554,23 @@ public final class Main {
             rotorArray[i] = futureRotorArray.get(i);
         }
         String set = settingsFirst.next();
+        String rings = null;
+        if (settingsFirst.hasNext() && !settingsFirst.hasNext("[(].*")) {
+            rings = settingsFirst.next();
+        }
         String futurePlug = "";
         while (settingsFirst.hasNext()) {
             futurePlug += settingsFirst.next();
         }
         if (!futurePlug.equals("")) {
-            Permutation plug = new Permutation(futurePlug, _alphabet);
+            Permutation plug =
+                PermutationRegistry.intern(futurePlug, _alphabet);
             M.insertRotors(rotorArray);
-            M.setRotors(set);
+            M.setRotors(set, rings);
             M.setPlugboard(plug);
         } else {
             M.insertRotors(rotorArray);
-            M.setRotors(set);
+            M.setRotors(set, rings);
         }
 
 
@@ -210,7 +578,7 @@ public final class Main {
 
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
-    private void printMessageLine(String msg) {
+    void printMessageLine(String msg) {
         for (int i = 0; i < msg.length(); i += 5) {
             if (msg.length() - i <= 5) {
                 _output.println(msg.substring(i, msg.length()) + " ");
@@ -226,12 +594,88 @@ public final class Main {
     /** Source of input messages. */
     private Scanner _input;
 
+    /** Source of input messages as bytes, if _input is null. */
+    private InputStream _inputStream;
+
+    /** Charset of input messages read from _inputStream. */
+    private Charset _charset;
+
+    /** True iff malformed input in _inputStream ends it, as for a
+     *  Scanner on a File. */
+    private boolean _strict;
+
+    /** The file underlying _inputStream, if it is one. */
+    private FileInputStream _inputFile;
+
+    /** The options of this run. */
+    private final Options _options;
+
+    /** The checkpoint being resumed from, or null. */
+    private Checkpoint _resumeFrom;
+
+    /** Where checkpoints are recorded. */
+    private final Checkpoints _checkpoints;
+
+    /** True iff the input is compressed with gzip. */
+    private boolean _compressed;
+
+    /** The compressor underlying _output, if the output is
+     *  compressed. */
+    private GZIPOutputStream _gzipOutput;
+
+    /** The file underlying _output, if it is one. */
+    private FileOutputStream _outputFile;
+
+    /** The byte mode in progress, if any. */
+    private ByteProcessor _bytes;
+
+    /** Checks message lines as they are converted, or null. */
+    private Verifier _verifier;
+
+    /** Settings of the rotors given by the last setting line, in
+     *  indicator mode. */
+    private int[] _ground;
+
+    /** The engine choice for byte mode, once made. */
+    private EngineChoice _engine;
+
+    /** Number of possible byte values. */
+    private static final int BYTE_VALUES = 256;
+
+    /** Pattern matching all the rest of the input of a Scanner. */
+    private static final Pattern REST = Pattern.compile("(?s).+");
+
+    /** Size of the buffers of compressed streams. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
     /** Source of machine configuration. */
     private Scanner _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
+    /** Counters of the work I have done. */
+    private final Metrics _metrics = new Metrics();
+
+    /** Where the choice of engine is reported, or null if it is not. */
+    private PrintStream _log;
+
+    /** Make byte mode convert messages with the engine named NAME (see
+     *  EngineChoice), as --engine=NAME does. */
+    void setEngine(String name) {
+        _options.setEngine(name);
+    }
+
+    /** Return the counters of the work I have done. */
+    Metrics metrics() {
+        return _metrics;
+    }
+
+    /** Return the alphabet of the machine last configured. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
     /** Function to return numrotorss @return int. */
     int getNumRotorss() {
         return numRotorss;
@@ -241,23 +685,4 @@ public final class Main {
     int getNumPawlss() {
         return numPawlss;
     }
-
-    /** returns Copy of returnRotor @return Rotor. */
-    Rotor getReturnRotor() {
-        return returnRotor;
-    }
-
-    /** Copy of first @return char. */
-    char getFirst() {
-        return first;
-    }
-
-    /** A String containing cycles which readRotor() appends to. */
-    private String perm;
-
-    /** Temporary string that is set to NEXT token of _config. */
-    private String temp;
-
-    /** Type and notches of current rotor. */
-    private String notches;
 }
@@ -0,0 +1,225 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Counters of the work done by one run of Main, and the JDK Flight
+ *  Recorder events it emits.  Counters are updated once per section or
+ *  per call, never per character, and the events follow the usual JFR
+ *  pattern, so that a run that records nothing costs practically
+ *  nothing extra.
+ *  @author Osvaldo Valadez
+ */
+class Metrics {
+
+    /** Record that reading the configuration took NANOS nanoseconds. */
+    void configLoaded(long nanos) {
+        _configNanos += nanos;
+    }
+
+    /** Record a call to Main.setUp. */
+    void setUpCalled() {
+        _setUpCalls += 1;
+    }
+
+    /** Record that a section of LENGTH characters was processed. */
+    void sectionProcessed(long length) {
+        _sections += 1;
+        _characters += length;
+    }
+
+    /** Record that Main converts messages as described by ENGINE. */
+    void engineChosen(String engine) {
+        _engine = engine;
+    }
+
+    /** Record that the table engine keeps its tables in STORAGE. */
+    void tablesStored(TableStorage storage) {
+        _storage = storage;
+    }
+
+    /** Record that Verifier checked CHECKED characters, and that Main
+     *  waited WAITNANOS nanoseconds for it. */
+    void verified(long checked, long waitNanos) {
+        _verified = checked;
+        _verifyWaitNanos = waitNanos;
+    }
+
+    /** Return the number of characters converted. */
+    long characters() {
+        return _characters;
+    }
+
+    /** Return the number of sections processed. */
+    long sections() {
+        return _sections;
+    }
+
+    /** Return the number of calls to Main.setUp. */
+    long setUpCalls() {
+        return _setUpCalls;
+    }
+
+    /** Return the time spent reading the configuration in
+     *  nanoseconds. */
+    long configNanos() {
+        return _configNanos;
+    }
+
+    /** Print a summary of my counters on OUT. */
+    void print(PrintStream out) {
+        out.printf("characters converted: %d%n", _characters);
+        out.printf("sections processed: %d%n", _sections);
+        out.printf("setUp calls: %d%n", _setUpCalls);
+        out.printf("config parse time: %.3f ms%n", _configNanos / 1e6);
+        if (_engine != null) {
+            out.printf("engine: %s%n", _engine);
+        }
+        if (_storage != null) {
+            out.printf("tables: %s, %d bytes off heap%n", _storage,
+                       _storage.offHeapBytes());
+        }
+        if (_verified >= 0) {
+            out.printf("characters verified: %d, after waiting %.3f ms"
+                       + " for the verifier%n", _verified,
+                       _verifyWaitNanos / 1e6);
+        }
+        long hits = PermutationRegistry.hits();
+        long made = PermutationRegistry.misses();
+        out.printf("permutations: %d reused, %d made (%.1f%% reused),"
+                   + " %d held%n", hits, made,
+                   hits + made == 0 ? 0.0 : 100.0 * hits / (hits + made),
+                   PermutationRegistry.size());
+        out.printf("GC time: %d ms in %d collections%n", gcMillis(),
+                   gcCount());
+        long allocated = allocatedBytes();
+        if (allocated >= 0) {
+            out.printf("bytes allocated: %d%n", allocated);
+        }
+        long rss = peakResidentKilobytes();
+        if (rss >= 0) {
+            out.printf("peak RSS: %d kB%n", rss);
+        }
+    }
+
+    /** Return the number of bytes allocated so far by the current
+     *  thread, or -1 if the JVM does not say. */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads =
+            ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /** Return the total time spent in garbage collection so far, in
+     *  milliseconds. */
+    static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /** Return the number of garbage collections so far. */
+    static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /** Return the peak resident set size of this process in kilobytes,
+     *  or -1 if the system does not say. */
+    static long peakResidentKilobytes() {
+        try {
+            for (String line
+                     : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            /* Fall through: not available here. */
+        }
+        return -1;
+    }
+
+    /** A JFR event covering the reading of a configuration. */
+    @Name("enigma.ConfigLoad")
+    @Label("Configuration Load")
+    @Category("Enigma")
+    static class ConfigLoad extends Event {
+        /** Size of the alphabet read. */
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        /** Number of rotors described. */
+        @Label("Rotors")
+        int rotors;
+    }
+
+    /** A JFR event covering the setting up and encryption of one
+     *  section of the input. */
+    @Name("enigma.Section")
+    @Label("Section")
+    @Category("Enigma")
+    @Description("Setting up and converting one message")
+    static class Section extends Event {
+        /** The setting line of the section. */
+        @Label("Setting")
+        String setting;
+
+        /** Number of characters converted. */
+        @Label("Length")
+        long length;
+    }
+
+    /** A JFR event covering the final flush of the output. */
+    @Name("enigma.OutputFlush")
+    @Label("Output Flush")
+    @Category("Enigma")
+    static class OutputFlush extends Event {
+    }
+
+    /** Number of characters converted. */
+    private long _characters;
+
+    /** Number of sections processed. */
+    private long _sections;
+
+    /** Number of calls to Main.setUp. */
+    private long _setUpCalls;
+
+    /** Time spent reading the configuration, in nanoseconds. */
+    private long _configNanos;
+
+    /** Description of the engine chosen, or null if none was. */
+    private String _engine;
+
+    /** Where the table engine keeps its tables, or null if no engine
+     *  was chosen. */
+    private TableStorage _storage;
+
+    /** Number of characters verified, or -1 if not verifying. */
+    private long _verified = -1;
+
+    /** Time spent waiting for the verifier, in nanoseconds. */
+    private long _verifyWaitNanos;
+}
@@ -9,6 +9,13 @@ class MovingRotor extends Rotor {
     /** Copy of notches. */
     private String _notches;
 
+    /** True at each setting where I am at a notch. */
+    private boolean[] _notchAt;
+
+    /** For each setting, the number of positions to advance to be next
+     *  at a notch, or Integer.MAX_VALUE if I have none. */
+    private int[] _untilNotch;
+
     /** Get _notches @return String. */
     String getNotches() {
         return _notches;
@@ -22,7 +29,20 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
-
+        _notchAt = new boolean[size()];
+        for (int x = 0; x < notches.length(); x++) {
+            _notchAt[alphabet().toInt(notches.charAt(x))] = true;
+        }
+        _untilNotch = new int[size()];
+        int next = -1;
+        for (int x = 2 * size() - 1; x >= 0; x--) {
+            if (x < size()) {
+                _untilNotch[x] = next < 0 ? Integer.MAX_VALUE : next - x;
+            }
+            if (_notchAt[x % size()]) {
+                next = x;
+            }
+        }
     }
 
     @Override
@@ -32,21 +52,28 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        for (int x = 0; x < _notches.length(); x++) {
-            if (alphabet().toInt(_notches.charAt(x)) == this.setting()) {
-                return true;
-            }
-        }
-        return false;
+        return _notchAt[setting()];
+    }
 
+    @Override
+    boolean[] notchTable() {
+        return _notchAt;
     }
 
     @Override
-    void advance() {
-        if (rotates()) {
-            this.set(getPermutation().wrap(this.setting() + 1));
-        }
+    int untilNotch() {
+        return _untilNotch[setting()];
     }
 
+    @Override
+    void advance() {
+        int next = setting() + 1;
+        turnTo(next == size() ? 0 : next);
+    }
 
+    @Override
+    void advance(int k) {
+        int next = setting() + k;
+        turnTo(next >= size() ? next - size() : next);
+    }
 }
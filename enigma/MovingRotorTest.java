@@ -82,4 +82,17 @@ public class MovingRotorTest {
         rotor.set(25);
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
+
+    @Test
+    public void checkRingSetting() {
+        setRotor("I", NAVALA, "");
+        rotor.setRing(1);
+        rotor.set(1);
+        checkRotor("Rotor I ring B at B", UPPER_STRING, NAVALA_MAP.get("I"));
+        rotor.set(2);
+        checkRotor("Rotor I ring B at C", UPPER_STRING, NAVALB_MAP.get("I"));
+        rotor.setRing(0);
+        rotor.set(1);
+        checkRotor("Rotor I ring A at B", UPPER_STRING, NAVALB_MAP.get("I"));
+    }
 }
\ No newline at end of file
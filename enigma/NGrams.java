@@ -0,0 +1,234 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A table of log-probabilities of the n-grams of an alphabet, used to
+ *  judge how much a candidate decryption looks like ordinary text.
+ *  The table is a flat array indexed by packed n-grams: the n-gram
+ *  c1 c2 ... cn of alphabet indices has index
+ *  ((c1 * size + c2) * size + ...) * size + cn.
+ *
+ *  A table can be saved in a compact binary form and loaded again by
+ *  mapping the file into memory, read-only, rather than reading it onto
+ *  the heap.  Threads share a loaded table freely, and processes loading
+ *  the same file share its pages.  The binary form is a header of
+ *  big-endian ints: MAGIC, VERSION, the n-gram length, and the alphabet
+ *  size, followed by the alphabet's characters as 16-bit chars, padding
+ *  to a multiple of 4 bytes, and the log-probabilities as big-endian
+ *  floats in packed n-gram order.
+ *  @author Osvaldo Valadez
+ */
+class NGrams {
+
+    /** Build a binary n-gram table as specified by ARGS, where
+     *  ARGS.length == 4.  ARGS[0] is the name of a configuration file,
+     *  whose alphabet the table uses, ARGS[1] the name of a file of
+     *  ordinary text, ARGS[2] the n-gram length, and ARGS[3] the name
+     *  of the table file to write. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4) {
+                throw error("Exactly 4 command-line arguments allowed");
+            }
+            Alphabet alpha =
+                new Alphabet(new Scanner(Main.readFile(args[0])).next());
+            new NGrams(alpha, Main.parseCount(args[2]),
+                       Main.readFile(args[1])).save(args[3]);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Largest table NGrams will build. */
+    static final int MAX_ENTRIES = 1 << 26;
+
+    /** First int of a binary n-gram table. */
+    static final int MAGIC = 0x454e4752;
+
+    /** Version of the binary format written by save(). */
+    static final int VERSION = 1;
+
+    /** The table of N-grams over ALPHA occurring in CORPUS, a sample of
+     *  ordinary text.  CORPUS is converted to upper case, and its
+     *  characters not in ALPHA are ignored, so that n-grams run across
+     *  spaces and punctuation.  N-grams that do not occur in CORPUS get
+     *  a probability somewhat below that of one occurrence. */
+    NGrams(Alphabet alpha, int n, String corpus) {
+        this(alpha, n, FloatBuffer.allocate(entries(alpha, n)));
+        long[] counts = new long[_logProbs.capacity()];
+        long total = 0;
+        int gram = 0, have = 0;
+        corpus = corpus.toUpperCase();
+        for (int i = 0; i < corpus.length(); i++) {
+            char c = corpus.charAt(i);
+            if (alpha.contains(c)) {
+                gram = (gram % _prefixes) * _size + alpha.toInt(c);
+                have += 1;
+                if (have >= n) {
+                    counts[gram] += 1;
+                    total += 1;
+                }
+            }
+        }
+        if (total == 0) {
+            throw error("corpus has no %d-grams", n);
+        }
+        float floor = (float) Math.log10(UNSEEN / total);
+        for (int i = 0; i < counts.length; i++) {
+            _logProbs.put(i, counts[i] == 0 ? floor
+                          : (float) Math.log10((double) counts[i] / total));
+        }
+    }
+
+    /** A table of N-grams over ALPHA with log-probabilities LOGPROBS,
+     *  which has entries(ALPHA, N) entries. */
+    private NGrams(Alphabet alpha, int n, FloatBuffer logProbs) {
+        _alphabet = alpha;
+        _n = n;
+        _size = alpha.size();
+        _prefixes = entries(alpha, n) / _size;
+        _logProbs = logProbs;
+    }
+
+    /** Return the table saved by save() in the file named NAME, which is
+     *  mapped into memory rather than read. */
+    static NGrams load(String name) {
+        MappedByteBuffer data;
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(name), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+                throw error("%s is not an n-gram table", name);
+            }
+            int n = data.getInt();
+            char[] chars = new char[data.getInt()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = data.getChar();
+            }
+            Alphabet alpha = new Alphabet(new String(chars));
+            data.position((data.position() + 3) & ~3);
+            FloatBuffer logProbs = data.slice().asFloatBuffer();
+            if (logProbs.capacity() != entries(alpha, n)) {
+                throw error("%s is truncated", name);
+            }
+            return new NGrams(alpha, n, logProbs);
+        } catch (BufferUnderflowException excp) {
+            throw error("%s is truncated", name);
+        }
+    }
+
+    /** Return true iff the file named NAME starts like a table written
+     *  by save(). */
+    static boolean isTable(String name) {
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(name), StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(4);
+            channel.read(start);
+            return start.position() == 4 && start.getInt(0) == MAGIC;
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Write me to the file named NAME in the binary form that load()
+     *  reads. */
+    void save(String name) {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(name)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_n);
+            out.writeInt(_size);
+            out.writeChars(_alphabet.chars());
+            for (int pad = (4 - (2 * _size) % 4) % 4; pad > 0; pad--) {
+                out.writeByte(0);
+            }
+            for (int i = 0; i < _logProbs.capacity(); i++) {
+                out.writeFloat(_logProbs.get(i));
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the number of N-grams over ALPHA. */
+    private static int entries(Alphabet alpha, int n) {
+        if (n < 1) {
+            throw error("bad n-gram length: %d", n);
+        }
+        long entries = 1;
+        for (int i = 0; i < n; i++) {
+            entries *= alpha.size();
+            if (entries > MAX_ENTRIES) {
+                throw error("%d-gram table too large", n);
+            }
+        }
+        return (int) entries;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the length of my n-grams. */
+    int length() {
+        return _n;
+    }
+
+    /** Return the log-probability of the n-gram packed as GRAM. */
+    float logProb(int gram) {
+        return _logProbs.get(gram);
+    }
+
+    /** Return the sum of the log-probabilities of all n-grams in the
+     *  first LEN entries of TEXT, a sequence of alphabet indices.  The
+     *  higher the result, the more TEXT looks like the corpus. */
+    double score(int[] text, int len) {
+        double result = 0.0;
+        int gram = 0;
+        for (int i = 0; i < len; i++) {
+            gram = (gram % _prefixes) * _size + text[i];
+            if (i >= _n - 1) {
+                result += _logProbs.get(gram);
+            }
+        }
+        return result;
+    }
+
+    /** Count assumed for n-grams missing from the corpus. */
+    private static final double UNSEEN = 0.01;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Length of my n-grams, and size of my alphabet. */
+    private final int _n, _size;
+
+    /** Number of distinct (n-1)-grams. */
+    private final int _prefixes;
+
+    /** Log-probabilities indexed by packed n-gram, either on the heap or
+     *  mapped from a file. */
+    private final FloatBuffer _logProbs;
+}
@@ -0,0 +1,55 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the NGrams class.
+ *  @author Osvaldo Valadez
+ */
+public class NGramsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A small sample of text. */
+    private static final String CORPUS =
+        "From his shoulder Hiawatha took the camera of rosewood, "
+        + "made of sliding, folding rosewood; neatly put it all together.";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkScoresText() {
+        NGrams ngrams = new NGrams(UPPER, 2, CORPUS);
+        int[] likely = UPPER.toInts("ROSEWOOD");
+        int[] unlikely = UPPER.toInts("QZXJQZXJ");
+        assertTrue("common bigrams should score higher",
+                   ngrams.score(likely, likely.length)
+                   > ngrams.score(unlikely, unlikely.length));
+    }
+
+    @Test
+    public void checkSaveAndLoad() throws IOException {
+        NGrams ngrams = new NGrams(UPPER, 3, CORPUS);
+        File file = File.createTempFile("ngrams", ".bin");
+        file.deleteOnExit();
+        ngrams.save(file.getPath());
+        assertTrue(NGrams.isTable(file.getPath()));
+        NGrams loaded = NGrams.load(file.getPath());
+        assertEquals(3, loaded.length());
+        assertEquals(UPPER_STRING, loaded.alphabet().chars());
+        for (int gram = 0; gram < 26 * 26 * 26; gram += 1) {
+            assertEquals(msg("load", "wrong entry %d", gram),
+                         ngrams.logProb(gram), loaded.logProb(gram), 0.0);
+        }
+    }
+
+}
@@ -0,0 +1,274 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The options of a run of Main, given as arguments starting with "--"
+ *  anywhere on its command line, and the one to three file names among
+ *  them: the configuration, and optionally the input and the output.
+ *  Combinations of options that cannot work are rejected here, as soon
+ *  as what they depend on is known.
+ *  @author Osvaldo Valadez
+ */
+class Options {
+
+    /** The options of a Main that is handed its configuration and
+     *  streams rather than file names: all off. */
+    Options() {
+        _files = new String[0];
+    }
+
+    /** The options and file names in ARGS. */
+    Options(String[] args) {
+        ArrayList<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                parse(arg);
+            } else {
+                files.add(arg);
+            }
+        }
+        _files = files.toArray(new String[files.size()]);
+        if (_files.length < 1 || _files.length > 3) {
+            throw error("Only 1, 2, or 3 command-line arguments allowed");
+        }
+        if (_resume && _checkpoint == null) {
+            throw error("--resume needs --checkpoint");
+        }
+        if (_follow && _files.length < 2) {
+            throw error("--follow needs an input file");
+        }
+        if (_checkpoint != null && _files.length != 3) {
+            throw error("--checkpoint needs input and output files");
+        }
+        if (_workers > 0 && (_files.length != 3 || _checkpoint != null
+                             || _follow || _rawKey != null)) {
+            throw error("--workers needs input and output files, and no"
+                        + " --checkpoint, --follow, or --raw");
+        }
+        if (_end >= 0 && _files.length < 2) {
+            throw error("--end needs an input file");
+        }
+    }
+
+    /** Set the option ARG. */
+    private void parse(String arg) {
+        String value = arg.substring(arg.indexOf('=') + 1);
+        if (arg.equals("--stats")) {
+            _stats = true;
+        } else if (arg.equals("--chars")) {
+            _chars = true;
+        } else if (arg.startsWith("--raw=")) {
+            _rawKey = value;
+        } else if (arg.startsWith("--checkpoint=")) {
+            _checkpoint = value;
+        } else if (arg.equals("--resume")) {
+            _resume = true;
+        } else if (arg.startsWith("--engine=")) {
+            setEngine(value);
+        } else if (arg.startsWith("--tables=")) {
+            if (!TableStorage.valid(value)) {
+                throw error("unknown table storage: %s", value);
+            }
+            _storage = value;
+        } else if (arg.equals("--indicators")) {
+            _indicators = true;
+        } else if (arg.equals("--verify")) {
+            _verify = true;
+        } else if (arg.equals("--gzip")) {
+            _gzip = true;
+        } else if (arg.equals("--follow")) {
+            _follow = true;
+        } else if (arg.startsWith("--workers=")) {
+            _workers = Main.parseCount(value);
+        } else if (arg.startsWith("--end=")) {
+            _end = Main.parseOffset(value);
+        } else if (arg.startsWith("--latency=")) {
+            _latency = Main.parseCount(value);
+        } else {
+            throw error("unknown option: %s", arg);
+        }
+    }
+
+    /** Check that my options can be used with input that is COMPRESSED
+     *  with gzip, or not. */
+    void checkCompression(boolean compressed) {
+        if ((compressed || _gzip) && (_checkpoint != null || _workers > 0)) {
+            throw error("compressed files cannot be checkpointed or"
+                        + " sharded");
+        }
+        if (compressed && _follow) {
+            throw error("compressed input cannot be followed");
+        }
+    }
+
+    /** Check that my options can be used in raw mode, if I have a raw
+     *  key, or else in byte mode if BYTES, or else in character
+     *  mode. */
+    void checkMode(boolean bytes) {
+        if (_verify && (_rawKey != null || !bytes)) {
+            throw error("--verify needs byte mode");
+        }
+        if (_workers > 0 && !bytes) {
+            throw error("--workers needs byte mode");
+        }
+        if (_end >= 0 && (_rawKey != null || !bytes)) {
+            throw error("--end needs byte mode");
+        }
+        if (_rawKey != null && _indicators) {
+            throw error("--indicators needs message lines");
+        }
+        if (_rawKey == null && !bytes && _checkpoint != null) {
+            throw error("checkpoints need raw or byte mode");
+        }
+    }
+
+    /** Return the options that a worker converting a shard of my input
+     *  needs, apart from those that say which shard (see Shards). */
+    List<String> workerOptions() {
+        List<String> options = new ArrayList<>();
+        if (_indicators) {
+            options.add("--indicators");
+        }
+        if (_verify) {
+            options.add("--verify");
+        }
+        return options;
+    }
+
+    /** Make byte mode convert messages with the engine named NAME. */
+    void setEngine(String name) {
+        if (!EngineChoice.valid(name)) {
+            throw error("unknown engine: %s", name);
+        }
+        _engine = name;
+    }
+
+    /** Return the name of the configuration file. */
+    String config() {
+        return _files[0];
+    }
+
+    /** Return the name of the input file, or null for the standard
+     *  input. */
+    String input() {
+        return _files.length > 1 ? _files[1] : null;
+    }
+
+    /** Return the name of the output file, or null for the standard
+     *  output. */
+    String output() {
+        return _files.length > 2 ? _files[2] : null;
+    }
+
+    /** Return true iff a summary of the work done is printed on the
+     *  standard error at the end (--stats). */
+    boolean stats() {
+        return _stats;
+    }
+
+    /** Return true iff byte mode is turned off (--chars). */
+    boolean chars() {
+        return _chars;
+    }
+
+    /** Return the name of the file whose first line sets up the machine
+     *  in raw mode (--raw=KEY), or null if not in raw mode. */
+    String rawKey() {
+        return _rawKey;
+    }
+
+    /** Return the name of the file in which checkpoints are recorded
+     *  (--checkpoint=FILE), or null. */
+    String checkpoint() {
+        return _checkpoint;
+    }
+
+    /** Return true iff the run continues from its checkpoint
+     *  (--resume). */
+    boolean resume() {
+        return _resume;
+    }
+
+    /** Return the name of the engine that converts messages in byte mode
+     *  (--engine=NAME; see EngineChoice). */
+    String engine() {
+        return _engine;
+    }
+
+    /** Return the name of the kind of storage for the table engine's
+     *  tables (--tables=KIND; see TableStorage). */
+    String storage() {
+        return _storage;
+    }
+
+    /** Return true iff each message line starts with its message key
+     *  (--indicators). */
+    boolean indicators() {
+        return _indicators;
+    }
+
+    /** Return true iff message lines are checked to convert back
+     *  (--verify; see Verifier). */
+    boolean verify() {
+        return _verify;
+    }
+
+    /** Return true iff the output is compressed with gzip (--gzip). */
+    boolean gzip() {
+        return _gzip;
+    }
+
+    /** Return true iff the input is followed as it grows (--follow). */
+    boolean follow() {
+        return _follow;
+    }
+
+    /** Return the number of worker processes that convert shards of the
+     *  input (--workers=N), or 0 if the input is not sharded. */
+    int workers() {
+        return _workers;
+    }
+
+    /** Return the offset in the input file at whose first line boundary
+     *  byte mode stops (--end=OFFSET), or -1 to stop at the end. */
+    long end() {
+        return _end;
+    }
+
+    /** Return the longest delay of output in follow mode, in
+     *  milliseconds (--latency=MS). */
+    int latency() {
+        return _latency;
+    }
+
+    /** Default for _latency. */
+    private static final int DEFAULT_LATENCY = 50;
+
+    /** The arguments that are not options. */
+    private final String[] _files;
+
+    /** Values of the options (see their accessors). */
+    private boolean _stats, _chars, _resume, _indicators, _verify, _gzip,
+        _follow;
+
+    /** Values of the options (see their accessors). */
+    private String _rawKey, _checkpoint;
+
+    /** Value of --engine. */
+    private String _engine = EngineChoice.AUTO;
+
+    /** Value of --tables. */
+    private String _storage = TableStorage.HEAP;
+
+    /** Value of --workers. */
+    private int _workers;
+
+    /** Value of --end. */
+    private long _end = -1;
+
+    /** Value of --latency. */
+    private int _latency = DEFAULT_LATENCY;
+}
@@ -47,6 +47,31 @@ public class Permutation {
         for (int i = 0; i < alphabet.size(); i++) {
             permutationMap.putIfAbsent(alphabet.toChar(i), alphabet.toChar(i));
         }
+        buildTables();
+    }
+
+    /** Fill in _forward and _inverse from _permutationMap, so that
+     *  permute(int) and invert(int) are simple array lookups. */
+    private void buildTables() {
+        int n = size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            _forward[i] = _alphabet.toInt(
+                (char) _permutationMap.get(_alphabet.toChar(i)));
+            _inverse[i] = i;
+        }
+        for (Object key : _permutationMap.keySet()) {
+            char value = (char) _permutationMap.get(key);
+            if (_alphabet.contains(value)) {
+                int index = _alphabet.toInt(value);
+                if (!seen[index]) {
+                    seen[index] = true;
+                    _inverse[index] = _alphabet.toInt((char) key);
+                }
+            }
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
@@ -72,23 +97,13 @@ public class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int index = wrap(p);
-        char a = _alphabet.toChar(index);
-        char returnvalue = (char) _permutationMap.get(a);
-        return _alphabet.toInt(returnvalue);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        Object tocharresult = (Object) _alphabet.toChar(c);
-        for (Object i: _permutationMap.keySet()) {
-            char copy = (char) i;
-            if (_permutationMap.get(i) == tocharresult) {
-                return _alphabet.toInt(copy);
-            }
-        }
-        return c;
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -138,6 +153,12 @@ public class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
+    /** Index of the image of each alphabet index under this permutation. */
+    private int[] _forward;
+
+    /** Index of the preimage of each alphabet index. */
+    private int[] _inverse;
+
     /** Check that parenthesis @param s match @return boolean. */
     boolean checkParenthesis(String s) {
         boolean check;
@@ -0,0 +1,140 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The canonical Permutations of the cycles seen lately, so that equal
+ *  wirings in several configurations, and the plugboards that recur
+ *  across setting lines, are each parsed once and share one set of
+ *  tables.  A Permutation never changes once made, so one may serve any
+ *  number of rotors and machines, in any thread.
+ *
+ *  Permutations are keyed by the characters of their alphabet and by
+ *  their cycles in a normal form, in which blanks and cycles of one
+ *  character are dropped, each cycle starts with its least character,
+ *  and the cycles are in order of their first characters, so that
+ *  "(YF) (ZH)" and "(HZ)(FY)" find the same Permutation.  Cycles not
+ *  in the form Permutation expects are keyed as written.  The registry
+ *  holds the CAPACITY permutations used most recently.
+ *  @author Osvaldo Valadez
+ */
+class PermutationRegistry {
+
+    /** Return a Permutation specified by CYCLES over ALPHABET, as for
+     *  new Permutation(CYCLES, ALPHABET): the one in the registry, if
+     *  there is one, or a new one, which is added. */
+    static Permutation intern(String cycles, Alphabet alphabet) {
+        String key = key(cycles, alphabet);
+        synchronized (PERMUTATIONS) {
+            Permutation result = PERMUTATIONS.get(key);
+            if (result != null) {
+                _hits += 1;
+                return result;
+            }
+            _misses += 1;
+        }
+        Permutation made = new Permutation(cycles, alphabet);
+        synchronized (PERMUTATIONS) {
+            Permutation result = PERMUTATIONS.putIfAbsent(key, made);
+            return result == null ? made : result;
+        }
+    }
+
+    /** Return the number of calls to intern that found their
+     *  permutation in the registry. */
+    static long hits() {
+        synchronized (PERMUTATIONS) {
+            return _hits;
+        }
+    }
+
+    /** Return the number of calls to intern that made a permutation. */
+    static long misses() {
+        synchronized (PERMUTATIONS) {
+            return _misses;
+        }
+    }
+
+    /** Return the number of permutations held. */
+    static int size() {
+        synchronized (PERMUTATIONS) {
+            return PERMUTATIONS.size();
+        }
+    }
+
+    /** Return the key of the permutation specified by CYCLES over
+     *  ALPHABET. */
+    static String key(String cycles, Alphabet alphabet) {
+        String normal = normalize(cycles);
+        return alphabet.chars() + (normal == null ? AS_WRITTEN + cycles
+                                   : NORMAL + normal);
+    }
+
+    /** Return CYCLES in normal form, or null if they are not a sequence
+     *  of parenthesized cycles, separated by blanks, in which no
+     *  character appears twice. */
+    private static String normalize(String cycles) {
+        List<String> result = new ArrayList<>();
+        BitSet seen = new BitSet();
+        int i = 0, n = cycles.length();
+        while (true) {
+            while (i < n && cycles.charAt(i) == ' ') {
+                i += 1;
+            }
+            if (i == n) {
+                break;
+            } else if (cycles.charAt(i) != '(') {
+                return null;
+            }
+            int start = i + 1, least = start;
+            for (i = start; i < n && cycles.charAt(i) != ')'; i++) {
+                char c = cycles.charAt(i);
+                if (c == '(' || c == ' ' || seen.get(c)) {
+                    return null;
+                }
+                seen.set(c);
+                if (c < cycles.charAt(least)) {
+                    least = i;
+                }
+            }
+            if (i == n || i == start) {
+                return null;
+            }
+            if (i - start > 1) {
+                result.add(cycles.substring(least, i)
+                           + cycles.substring(start, least));
+            }
+            i += 1;
+        }
+        Collections.sort(result);
+        StringBuilder out = new StringBuilder();
+        for (String cycle : result) {
+            out.append('(').append(cycle).append(')');
+        }
+        return out.toString();
+    }
+
+    /** Most permutations held. */
+    private static final int CAPACITY = 4096;
+
+    /** Separate the alphabet in a key from cycles in normal form, or as
+     *  written. */
+    private static final char NORMAL = '\0', AS_WRITTEN = '\1';
+
+    /** The permutations held, by key, the least recently used first. */
+    private static final Map<String, Permutation> PERMUTATIONS =
+        new LinkedHashMap<>(CAPACITY, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Permutation> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+
+    /** Number of calls to intern that found or made their permutation. */
+    private static long _hits, _misses;
+}
@@ -51,4 +51,14 @@ public class PermutationTestCopy {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkInterned() {
+        perm = PermutationRegistry.intern("(YF) (ZHQ) (S)", UPPER);
+        assertSame(perm, PermutationRegistry.intern("(HQZ)(FY)",
+                                                    new Alphabet()));
+        assertNotSame(perm,
+                      PermutationRegistry.intern("(YF) (ZQH)", UPPER));
+        checkPerm("interned", UPPER_STRING, "ABCDEYGQIJKLMNOPZRSTUVWXFH");
+    }
+
 }
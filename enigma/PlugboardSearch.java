@@ -0,0 +1,272 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Recovery of the plugboard of an Enigma message whose rotor order and
+ *  settings are known, by hill climbing: starting from a random
+ *  plugboard, pairs of characters are plugged and unplugged as long as
+ *  that makes the decryption score better against a table of n-gram
+ *  frequencies.  Several random restarts run in parallel, and the best
+ *  plugboard found is reported in the cycle notation Main accepts.
+ *  @author Osvaldo Valadez
+ */
+public final class PlugboardSearch {
+
+    /** Search for the plugboard of a ciphertext, as specified by ARGS,
+     *  where 4 <= ARGS.length <= 6.  ARGS[0] is the name of a
+     *  configuration file, ARGS[1] the name of a file containing
+     *  ciphertext, ARGS[2] a setting line (as for Main, but any
+     *  plugboard given is ignored), and ARGS[3] the name of either a
+     *  file of ordinary text from which n-gram frequencies are taken or
+     *  an n-gram table built by NGrams.  ARGS[4] is optional and gives
+     *  the number of random restarts (default 20).  ARGS[5] is optional
+     *  and gives the length of the n-grams used for scoring a text
+     *  file, from 2 to 4 (default 4).  Prints the score of
+     *  the best decryption followed by the setting line with its
+     *  plugboard. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4 || args.length > 6) {
+                throw error("Only 4, 5, or 6 command-line arguments allowed");
+            }
+            int restarts = args.length > 4
+                ? Main.parseCount(args[4]) : DEFAULT_RESTARTS;
+            int n = args.length > 5
+                ? Main.parseCount(args[5]) : DEFAULT_LENGTH;
+            if (n < 2 || n > 4) {
+                throw error("n-gram length must be 2, 3, or 4");
+            }
+            String config = Main.readFile(args[0]);
+            Alphabet alpha = new Alphabet(new Scanner(config).next());
+            NGrams ngrams;
+            if (NGrams.isTable(args[3])) {
+                ngrams = NGrams.load(args[3]);
+            } else {
+                ngrams = new NGrams(alpha, n, Main.readFile(args[3]));
+            }
+            PlugboardSearch search =
+                new PlugboardSearch(config, Main.readFile(args[1]), args[2],
+                                    ngrams);
+            search.search(restarts, Runtime.getRuntime().availableProcessors());
+            System.out.printf("%.3f%n%s%n", search.bestScore(),
+                              search.settingLine());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search for the plugboard of CIPHERTEXT on the machine described
+     *  by the configuration text CONFIG, set up by the setting line
+     *  SETTING, scoring decryptions by NGRAMS, whose alphabet must be
+     *  the configured one.  Characters of CIPHERTEXT not in the configured
+     *  alphabet (after conversion to upper case) are ignored, as are
+     *  any past the first MAX_STEPS / size of the alphabet, which
+     *  suffice to score a plugboard. */
+    PlugboardSearch(String config, String ciphertext, String setting,
+                    NGrams ngrams) {
+        Main main = new Main(new Scanner(config), null, null);
+        Machine machine = main.readConfig();
+        main.setUp(machine, setting);
+        machine.setPlugboard(null);
+        _alphabet = machine.alphabet();
+        _setting = setting.trim().split("\\s+");
+        int[] cipher = _alphabet.toInts(ciphertext.toUpperCase());
+        _cipher = Arrays.copyOf(cipher, Math.min(cipher.length,
+                                                 MAX_STEPS / _alphabet.size()));
+        if (!ngrams.alphabet().chars().equals(_alphabet.chars())) {
+            throw error("n-gram table is for a different alphabet");
+        }
+        _ngrams = ngrams;
+        _steps = stepTables(machine);
+        _bestScore = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Run RESTARTS independent hill climbs, each from its own random
+     *  plugboard, on THREADS threads, and record the best result. */
+    void search(int restarts, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<int[]>> climbs = new ArrayList<>();
+        for (int i = 0; i < restarts; i++) {
+            Random random = new Random(SEED + i);
+            climbs.add(pool.submit(() -> climb(random)));
+        }
+        try {
+            for (Future<int[]> climb : climbs) {
+                int[] plugs = climb.get();
+                double score = score(plugs, new int[_cipher.length]);
+                if (score > _bestScore) {
+                    _bestScore = score;
+                    _best = plugs;
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("search interrupted");
+        } catch (ExecutionException excp) {
+            throw error("search failed: %s", excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the score of the best decryption found. */
+    double bestScore() {
+        return _bestScore;
+    }
+
+    /** Return the best plugboard found, in cycle notation. */
+    String plugboard() {
+        if (_best == null) {
+            throw error("no plugboard found: no search has finished");
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < _best.length; i++) {
+            if (i < _best[i]) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(i))
+                    .append(_alphabet.toChar(_best[i])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the setting line for the best plugboard found. */
+    String settingLine() {
+        StringBuilder result = new StringBuilder();
+        for (String word : _setting) {
+            if (word.startsWith("(")) {
+                break;
+            }
+            result.append(word).append(' ');
+        }
+        return (result + plugboard()).trim();
+    }
+
+    /** Return the plugboard reached by hill climbing from a plugboard
+     *  with a few pairs chosen using RANDOM, as an array mapping each
+     *  alphabet index to the index it is plugged to. */
+    private int[] climb(Random random) {
+        int size = _alphabet.size();
+        int[] plugs = new int[size];
+        int[] saved = new int[size];
+        int[] text = new int[_cipher.length];
+        for (int i = 0; i < size; i++) {
+            plugs[i] = i;
+        }
+        for (int k = random.nextInt(size / 4 + 1); k > 0; k--) {
+            plug(plugs, random.nextInt(size), random.nextInt(size));
+        }
+        double best = score(plugs, text);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    System.arraycopy(plugs, 0, saved, 0, size);
+                    plug(plugs, i, j);
+                    double score = score(plugs, text);
+                    if (score > best) {
+                        best = score;
+                        improved = true;
+                    } else {
+                        System.arraycopy(saved, 0, plugs, 0, size);
+                    }
+                }
+            }
+        }
+        return plugs;
+    }
+
+    /** Modify PLUGS by plugging I and J together, first unplugging
+     *  whatever they are plugged to.  If I and J are already plugged
+     *  together, unplug them instead. */
+    private static void plug(int[] plugs, int i, int j) {
+        if (plugs[i] == j) {
+            plugs[i] = i;
+            plugs[j] = j;
+        } else {
+            plugs[plugs[i]] = plugs[i];
+            plugs[plugs[j]] = plugs[j];
+            plugs[i] = j;
+            plugs[j] = i;
+        }
+    }
+
+    /** Return the score of the decryption of _cipher with plugboard
+     *  PLUGS, using TEXT to hold the decryption. */
+    private double score(int[] plugs, int[] text) {
+        int size = _alphabet.size();
+        for (int t = 0; t < _cipher.length; t++) {
+            text[t] = plugs[_steps[t * size + plugs[_cipher[t]]]];
+        }
+        return _ngrams.score(text, text.length);
+    }
+
+    /** Return the mappings performed by the rotors of MACHINE (which has
+     *  no plugboard) at each step of encrypting _cipher from its current
+     *  settings.  Entry t * size + c is the result of converting c at
+     *  step t.  The stepping of the rotors does not depend on the
+     *  plugboard, so these tables serve for every plugboard tried. */
+    private int[] stepTables(Machine machine) {
+        int size = _alphabet.size();
+        int[] result = new int[_cipher.length * size];
+        int[] settings = new int[machine.numRotors()];
+        machine.saveSettings(settings);
+        for (int c = 0; c < size; c++) {
+            machine.restoreSettings(settings);
+            for (int t = 0; t < _cipher.length; t++) {
+                result[t * size + c] = machine.convert(c);
+            }
+        }
+        return result;
+    }
+
+    /** Number of random restarts by default. */
+    private static final int DEFAULT_RESTARTS = 20;
+
+    /** Length of n-grams used by default. */
+    private static final int DEFAULT_LENGTH = 4;
+
+    /** Most entries in the tables of rotor mappings (see
+     *  stepTables). */
+    private static final int MAX_STEPS = 1 << 22;
+
+    /** Seed of the random plugboard of restart #0; restart #k uses
+     *  SEED + k, so that searches are reproducible. */
+    private static final long SEED = 0x5EED;
+
+    /** Alphabet of the configured machine. */
+    private final Alphabet _alphabet;
+
+    /** Words of the setting line. */
+    private final String[] _setting;
+
+    /** Alphabet indices of the ciphertext. */
+    private final int[] _cipher;
+
+    /** Table used to score decryptions. */
+    private final NGrams _ngrams;
+
+    /** Rotor mappings at each step of the message (see stepTables). */
+    private final int[] _steps;
+
+    /** Best plugboard found so far. */
+    private int[] _best;
+
+    /** Score of _best. */
+    private double _bestScore;
+}
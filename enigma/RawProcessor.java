@@ -0,0 +1,76 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** Raw mode of Main, for binary files: every byte of the input, taken
+ *  as an alphabet index, is converted by a machine set up once, and
+ *  written out as a byte, with no setting lines or formatting.  Bytes
+ *  pass through a large direct buffer, converted in place by
+ *  Machine.convert(ByteBuffer), so that they are never copied onto the
+ *  Java heap when the input and output are files.
+ *  @author Osvaldo Valadez
+ */
+class RawProcessor {
+
+    /** A processor reading INPUT and writing OUTPUT, recording
+     *  CHECKPOINTS as it goes.  If FOLLOW, INPUT is followed as it
+     *  grows, and what has arrived is converted whenever it runs dry. */
+    RawProcessor(InputStream input, WritableByteChannel output,
+                 boolean follow, Checkpoints checkpoints) {
+        _input = input;
+        _output = output;
+        _follow = follow;
+        _checkpoints = checkpoints;
+    }
+
+    /** Convert all of my input with ENIGMA, which must be set up, and
+     *  return the number of bytes converted. */
+    long process(Machine enigma) {
+        ReadableByteChannel in = Channels.newChannel(_input);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long length = 0;
+        try {
+            boolean more = true;
+            while (more) {
+                buffer.clear();
+                while (more && buffer.hasRemaining()
+                       && !(_follow && buffer.position() > 0
+                            && _input.available() == 0)) {
+                    more = in.read(buffer) >= 0;
+                }
+                buffer.flip();
+                enigma.convert(buffer);
+                length += buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    _output.write(buffer);
+                }
+                _checkpoints.record(enigma, length, null);
+            }
+        } catch (IOException excp) {
+            throw error("raw I/O failed: %s", excp.getMessage());
+        }
+        return length;
+    }
+
+    /** Size of the buffer. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Source of bytes. */
+    private final InputStream _input;
+
+    /** Destination of converted bytes. */
+    private final WritableByteChannel _output;
+
+    /** True iff following _input as it grows. */
+    private final boolean _follow;
+
+    /** Where progress is recorded. */
+    private final Checkpoints _checkpoints;
+}
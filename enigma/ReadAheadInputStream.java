@@ -0,0 +1,169 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** An input stream that reads another on a thread of its own, ahead of
+ *  its reader, so that work done by the other stream, such as
+ *  decompression, overlaps with work done on its output.  Data passes
+ *  between the threads in a fixed set of chunks, which circulate
+ *  between a queue of full chunks and a queue of free ones, so that
+ *  reading ahead allocates nothing and is bounded in memory.
+ *  @author Osvaldo Valadez
+ */
+class ReadAheadInputStream extends InputStream {
+
+    /** A stream delivering the contents of IN, which is read by a
+     *  separate thread. */
+    ReadAheadInputStream(InputStream in) {
+        _in = in;
+        _full = new ArrayBlockingQueue<>(CHUNKS);
+        _free = new ArrayBlockingQueue<>(CHUNKS);
+        for (int i = 0; i < CHUNKS; i++) {
+            _free.add(new Chunk());
+        }
+        _reader = new Thread(this::readAhead, "enigma-read-ahead");
+        _reader.setDaemon(true);
+        _reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ready()) {
+            return -1;
+        }
+        return _current._data[_pos++] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ready()) {
+            return -1;
+        }
+        int n = Math.min(len, _current._length - _pos);
+        System.arraycopy(_current._data, _pos, b, off, n);
+        _pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return _current == null ? 0 : _current._length - _pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _reader.interrupt();
+        _in.close();
+    }
+
+    /** Make _current a chunk with unread data, if there is any more.
+     *  Returns false at the end of the input, and throws any exception
+     *  the reading thread met there. */
+    private boolean ready() throws IOException {
+        while (_current == null || _pos == _current._length) {
+            if (_current != null) {
+                _free.add(_current);
+            }
+            try {
+                _current = _full.take();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted reading");
+            }
+            _pos = 0;
+        }
+        if (_current._length < 0) {
+            IOException error = _current._error;
+            _current._error = null;
+            if (error != null) {
+                throw error;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /** Fill chunks from _in until its end, an error, or interruption,
+     *  and then queue a chunk marking the end. */
+    private void readAhead() {
+        try {
+            while (true) {
+                Chunk chunk = _free.take();
+                chunk._length = 0;
+                IOException error = null;
+                try {
+                    while (chunk._length < chunk._data.length) {
+                        int n = _in.read(chunk._data, chunk._length,
+                                         chunk._data.length - chunk._length);
+                        if (n < 0) {
+                            break;
+                        }
+                        chunk._length += n;
+                    }
+                } catch (IOException excp) {
+                    error = excp;
+                }
+                boolean end = error != null
+                    || chunk._length < chunk._data.length;
+                if (chunk._length > 0) {
+                    _full.put(chunk);
+                    chunk = end ? _free.take() : null;
+                }
+                if (end) {
+                    chunk._length = -1;
+                    chunk._error = error;
+                    _full.put(chunk);
+                    return;
+                }
+            }
+        } catch (InterruptedException excp) {
+            /* Closed: stop reading. */
+        }
+    }
+
+    /** A buffer of data read ahead. */
+    private static class Chunk {
+        /** The data read. */
+        private final byte[] _data = new byte[CHUNK_SIZE];
+
+        /** Number of bytes of _data read, or -1 at the end of input. */
+        private int _length;
+
+        /** Exception that ended the input, or null. */
+        private IOException _error;
+    }
+
+    /** Number of chunks. */
+    private static final int CHUNKS = 4;
+
+    /** Size of a chunk. */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The stream read ahead. */
+    private final InputStream _in;
+
+    /** Chunks holding data not yet delivered, in order. */
+    private final BlockingQueue<Chunk> _full;
+
+    /** Chunks available to the reading thread. */
+    private final BlockingQueue<Chunk> _free;
+
+    /** The reading thread. */
+    private final Thread _reader;
+
+    /** Chunk being delivered, or null before the first. */
+    private Chunk _current;
+
+    /** Offset of the next byte to deliver in _current. */
+    private int _pos;
+}
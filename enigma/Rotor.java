@@ -15,6 +15,9 @@ class Rotor {
         _name = name;
         _permutation = perm;
         position = 0;
+        _forward = new int[size()];
+        _inverse = new int[size()];
+        buildTables();
     }
 
     /** Return my name. */
@@ -55,36 +58,101 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         position = posn;
+        if (_machine != null) {
+            _machine.rotorSet();
+        }
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        position = alphabet().toInt(cposn);
+        set(alphabet().toInt(cposn));
+    }
+
+    /** Set setting() to POSN as a step of my machine, which accounts
+     *  for the move itself, so it is not told of it as it is by set. */
+    void turnTo(int posn) {
+        position = posn;
+    }
+
+    /** Note that I am in a slot of MACHINE, which is told whenever I am
+     *  set other than by stepping.  A rotor belongs to the machine it
+     *  was last inserted in. */
+    void insertedIn(Machine machine) {
+        _machine = machine;
+    }
+
+    /** Return my ring setting. */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set my ring setting to RING, which rotates my wiring RING places
+     *  relative to the letters marking my settings (and my notches).
+     *  The rotation is folded into my conversion tables here, so that
+     *  converting costs the same whatever the ring setting. */
+    void setRing(int ring) {
+        ring = _permutation.wrap(ring);
+        if (ring != _ring) {
+            _ring = ring;
+            buildTables();
+        }
+    }
+
+    /** Fill in _forward and _inverse from my permutation, rotated by my
+     *  ring setting. */
+    private void buildTables() {
+        for (int i = 0; i < size(); i++) {
+            _forward[i] = _permutation.wrap(
+                _permutation.permute(i - _ring) + _ring);
+            _inverse[i] = _permutation.wrap(
+                _permutation.invert(i - _ring) + _ring);
+        }
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int preperm = permutation().wrap(position + p);
-        int permss =  alphabet().toInt((char) permutation()
-                .getPermutationMap().get(alphabet().toChar(preperm)));
-        return permutation().wrap(permss - position);
-
+        return step(_forward, p);
     }
-    /**Copy of perms. */
-    private int perms;
+
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        char preperm = alphabet().toChar(permutation().wrap(position + e));
-        for (Object i: permutation().getPermutationMap().keySet()) {
-            if ((char) permutation().getPermutationMap().get(i) == preperm) {
-                perms = alphabet().toInt((char) i);
-            }
+        return step(_inverse, e);
+    }
 
-        }
-        return permutation().wrap(perms - position);
+    /** Return the conversion of C, an integer in the range
+     *  0..size()-1, through TABLE, one of my tables, at my current
+     *  setting.  Since the setting and C are both in range, their sum
+     *  and difference wrap at most once, which adding the size masked
+     *  by the sign handles without a remainder, and without a branch
+     *  that would be mispredicted half the time. */
+    private int step(int[] table, int c) {
+        int size = table.length;
+        int k = position + c - size;
+        k += (k >> SIGN_SHIFT) & size;
+        k = table[k] - position;
+        return k + ((k >> SIGN_SHIFT) & size);
+    }
+
+    /** Return the table giving, for each contact at my 0 position, the
+     *  contact it is wired to, with my ring setting applied.  The
+     *  result is mine and must not be modified. */
+    int[] forwardTable() {
+        return _forward;
+    }
+
+    /** Return the inverse of forwardTable(), which must not be
+     *  modified. */
+    int[] inverseTable() {
+        return _inverse;
+    }
 
+    /** Return an array that is true at each setting where I am at a
+     *  notch, or null if I have none.  The result must not be
+     *  modified. */
+    boolean[] notchTable() {
+        return null;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -97,17 +165,41 @@ class Rotor {
     void advance() {
     }
 
+    /** Advance me K positions, 0 <= K < size(), if possible, as K calls
+     *  of advance would.  By default, does nothing. */
+    void advance(int k) {
+    }
+
+    /** Return the number of positions I must advance to be next at a
+     *  notch, at least 1, or Integer.MAX_VALUE if I never will be. */
+    int untilNotch() {
+        return Integer.MAX_VALUE;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
     }
 
+    /** Shift that turns an int into -1 if it is negative, else 0. */
+    private static final int SIGN_SHIFT = Integer.SIZE - 1;
+
     /** My name. */
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
     private Permutation _permutation;
 
+    /** My ring setting. */
+    private int _ring;
+
+    /** The machine I was last inserted in, or null. */
+    private Machine _machine;
+
+    /** My permutation and its inverse as index tables, rotated by my
+     *  ring setting. */
+    private int[] _forward, _inverse;
+
     /** get copy of _permutation @return Permutation. */
     Permutation getPermutation() {
         return _permutation;
@@ -117,8 +209,4 @@ class Rotor {
     int getPosition() {
         return position;
     }
-    /** Get a copy of perm @return int.*/
-    int getPerms() {
-        return perms;
-    }
 }
@@ -0,0 +1,193 @@
+package enigma;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to a Machine, looked up by name.  A catalog
+ *  read from a configuration file is only indexed when it is made: one
+ *  quick pass over the rotor descriptions checks their syntax and
+ *  records where each starts, and a rotor's wiring is parsed into a
+ *  Permutation and a Rotor only the first time it is asked for, so
+ *  that a file describing thousands of rotors costs little more than
+ *  the handful a run uses.  Rotors once made are kept, so that each
+ *  name always yields the same Rotor, as it did when every rotor was
+ *  made in advance; lookups may come from several threads.  Iterating
+ *  over a catalog makes all of its rotors.
+ *  @author Osvaldo Valadez
+ */
+class RotorCatalog extends AbstractCollection<Rotor> {
+
+    /** A catalog of the rotors described in TEXT, the part of a
+     *  configuration file after the rotor and pawl counts, whose
+     *  characters are in ALPHABET.  When two rotors have the same name,
+     *  the later one counts.  Every description is checked, whether or
+     *  not its rotor is ever made. */
+    RotorCatalog(Alphabet alphabet, String text) {
+        _alphabet = alphabet;
+        _text = text;
+        for (int k = 0; k < alphabet.size(); k++) {
+            _characters.set(alphabet.toChar(k));
+        }
+        int i = skipSpace(0);
+        while (i < text.length()) {
+            int start = i;
+            i = skipSpace(tokenEnd(i));
+            if (i == text.length()) {
+                throw error("bad rotor description");
+            }
+            String name = text.substring(start, tokenEnd(start))
+                .toUpperCase();
+            if ("MNR".indexOf(Character.toUpperCase(text.charAt(i))) < 0) {
+                throw error("bad type for rotor %s", name);
+            }
+            i = skipSpace(tokenEnd(i));
+            int depth = 0;
+            while (i < text.length() && text.charAt(i) == '(') {
+                int end = tokenEnd(i);
+                for (int k = i; k < end; k++) {
+                    depth = checkCycle(name, text.charAt(k), depth);
+                }
+                i = skipSpace(end);
+            }
+            if (depth != 0) {
+                throw error("bad wiring for rotor %s", name);
+            }
+            if (_offsets.put(name, start) == null) {
+                _names.add(name);
+            }
+        }
+    }
+
+    /** A catalog of ROTORS, which are already made.  When two rotors
+     *  have the same name, the later one counts. */
+    RotorCatalog(Collection<Rotor> rotors) {
+        _alphabet = null;
+        _text = null;
+        for (Rotor rotor : rotors) {
+            if (_made.put(rotor.name(), rotor) == null) {
+                _names.add(rotor.name());
+            }
+        }
+    }
+
+    /** Return the rotor named NAME, or null if there is none. */
+    Rotor get(String name) {
+        Rotor rotor = _made.get(name);
+        if (rotor != null || !_offsets.containsKey(name)) {
+            return rotor;
+        }
+        return _made.computeIfAbsent(name, this::make);
+    }
+
+    @Override
+    public int size() {
+        return _names.size();
+    }
+
+    @Override
+    public Iterator<Rotor> iterator() {
+        Iterator<String> names = _names.iterator();
+        return new Iterator<Rotor>() {
+            @Override
+            public boolean hasNext() {
+                return names.hasNext();
+            }
+
+            @Override
+            public Rotor next() {
+                return get(names.next());
+            }
+        };
+    }
+
+    /** Return a new rotor made from the description of the rotor named
+     *  NAME. */
+    private Rotor make(String name) {
+        int start = _offsets.get(name);
+        int i = skipSpace(tokenEnd(start));
+        String kind = _text.substring(i, tokenEnd(i)).toUpperCase();
+        i = skipSpace(tokenEnd(i));
+        StringBuilder cycles = new StringBuilder();
+        while (i < _text.length() && _text.charAt(i) == '(') {
+            cycles.append(_text, i, tokenEnd(i));
+            i = skipSpace(tokenEnd(i));
+        }
+        Permutation perm =
+            PermutationRegistry.intern(cycles.toString(), _alphabet);
+        switch (kind.charAt(0)) {
+        case 'M':
+            return new MovingRotor(name, perm, kind.substring(1));
+        case 'N':
+            return new FixedRotor(name, perm);
+        case 'R':
+            return new Reflector(name, perm);
+        default:
+            throw error("bad rotor description");
+        }
+    }
+
+    /** Return the depth of parentheses in the wiring of the rotor named
+     *  NAME after its character C, where DEPTH is the depth before it.
+     *  Cycles may not nest or be closed before they are opened, and
+     *  their contents must be in my alphabet. */
+    private int checkCycle(String name, char c, int depth) {
+        if (c == '(') {
+            depth += 1;
+        } else if (c == ')') {
+            depth -= 1;
+        } else if (depth == 0 || !_characters.get(c)) {
+            throw error("bad wiring for rotor %s", name);
+        }
+        if (depth != 0 && depth != 1) {
+            throw error("bad wiring for rotor %s", name);
+        }
+        return depth;
+    }
+
+    /** Return the index of the first non-whitespace character of _text
+     *  at or after I, or its length if there is none. */
+    private int skipSpace(int i) {
+        while (i < _text.length() && Character.isWhitespace(_text.charAt(i))) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /** Return the index just past the token of _text that starts at
+     *  I. */
+    private int tokenEnd(int i) {
+        while (i < _text.length()
+               && !Character.isWhitespace(_text.charAt(i))) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /** Alphabet of the rotors described by _text. */
+    private final Alphabet _alphabet;
+
+    /** The characters of _alphabet. */
+    private final BitSet _characters = new BitSet();
+
+    /** Descriptions of rotors not yet made, or null if all are made. */
+    private final String _text;
+
+    /** Names of my rotors, in the order in which they were first
+     *  described. */
+    private final List<String> _names = new ArrayList<>();
+
+    /** Offset in _text of the description of each rotor. */
+    private final Map<String, Integer> _offsets = new HashMap<>();
+
+    /** Rotors made so far, by name. */
+    private final Map<String, Rotor> _made = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,257 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+
+import static enigma.EnigmaException.*;
+
+/** A division of the input of Main into shards, each converted by a
+ *  separate worker process, whose outputs are then joined in order.
+ *  Shards are planned by a pass of Main over the input that steps its
+ *  machine through each line without converting it: at the line
+ *  boundaries where Main would take checkpoints, the first one at or
+ *  after each of a set of evenly spaced offsets is recorded as a
+ *  Checkpoint.  A worker is then simply Main resuming from the
+ *  checkpoint at the start of its shard, stopping at the start of the
+ *  next (see --end), and checkpointing as it goes, so that a worker
+ *  that dies is restarted from its own latest checkpoint.
+ *  @author Osvaldo Valadez
+ */
+class Shards {
+
+    /** Shards for WORKERS workers of an input of SIZE bytes. */
+    Shards(long size, int workers) {
+        _size = size;
+        _workers = workers;
+        _count = SHARDS_PER_WORKER * workers;
+        _starts.add(null);
+        _next = target(1);
+    }
+
+    /** Note that a shard may start at INPUT bytes into the input, where
+     *  MACHINE is in its current state and the section in progress was
+     *  set up by SETTING. */
+    void offer(Machine machine, long input, String setting) {
+        if (input < _next) {
+            return;
+        }
+        _starts.add(new Checkpoint(machine, input, 0, setting));
+        int k = _starts.size();
+        while (target(k) <= input) {
+            k += 1;
+        }
+        _next = target(k);
+    }
+
+    /** Return the offset at which I would like shard #K to start. */
+    private long target(int k) {
+        return k >= _count ? Long.MAX_VALUE : _size * k / _count;
+    }
+
+    /** Return the number of shards planned. */
+    int size() {
+        return _starts.size();
+    }
+
+    /** Convert the shards, at most _workers at a time, with workers
+     *  that run Main in this JVM's installation and class path, in
+     *  CHARSET, with OPTIONS and the rest of Main's arguments, reading
+     *  the configuration file CONFIG and the input file INPUT, and
+     *  append their outputs in order to OUT, the file named OUTNAME.
+     *  Temporary files go in a directory beside it, which is deleted
+     *  afterwards.  A worker that dies without reporting an error in
+     *  the input is tried again, up to MAX_TRIES times in all.  If a
+     *  shard fails, the outputs up to and including its partial output
+     *  are appended, and the error reported. */
+    void run(List<String> options, Charset charset, String config,
+             String input, String outName, FileChannel out) {
+        Path dir;
+        try {
+            dir = Files.createTempDirectory(
+                Paths.get(outName).toAbsolutePath().getParent(),
+                ".enigma-shards");
+        } catch (IOException excp) {
+            throw error("could not create shard directory");
+        }
+        try {
+            for (int k = 1; k < _starts.size(); k += 1) {
+                _starts.get(k).write(file(dir, k, "checkpoint"));
+            }
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin",
+                                  "java").toString());
+            command.add("-Dfile.encoding=" + charset.name());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("enigma.Main");
+            command.addAll(options);
+            String failure = runWorkers(command, config, input, dir);
+            for (int k = 0; k < _starts.size() && k <= _failed; k += 1) {
+                Path output = new File(file(dir, k, "out")).toPath();
+                if (!Files.exists(output)) {
+                    continue;
+                }
+                try (FileChannel shard = FileChannel.open(
+                         output, StandardOpenOption.READ)) {
+                    long n = shard.size();
+                    for (long done = 0; done < n; ) {
+                        done += shard.transferTo(done, n - done, out);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw error("%s", failure);
+            }
+        } catch (IOException excp) {
+            throw error("sharding failed: %s", excp.getMessage());
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    /** Run the workers as for run, each started by COMMAND followed by
+     *  its own arguments, with CONFIG, INPUT, and DIR as for run, and set
+     *  _failed to the first shard that failed, if any.  Returns the
+     *  error it reported, or null. */
+    private String runWorkers(List<String> command, String config,
+                              String input, Path dir) throws IOException {
+        PriorityQueue<Integer> pending = new PriorityQueue<>();
+        for (int k = 0; k < _starts.size(); k += 1) {
+            pending.add(k);
+        }
+        int[] tries = new int[_starts.size()];
+        Map<Process, Integer> running = new HashMap<>();
+        String failure = null;
+        _failed = Integer.MAX_VALUE;
+        while (!running.isEmpty() || wanted(pending)) {
+            while (running.size() < _workers && wanted(pending)) {
+                int k = pending.poll();
+                tries[k] += 1;
+                running.put(start(command, config, input, dir, k), k);
+            }
+            Process done = finished(running.keySet());
+            int k = running.remove(done);
+            if (done.exitValue() == 0) {
+                continue;
+            }
+            String report = report(dir, k);
+            if (report == null && tries[k] < MAX_TRIES) {
+                pending.add(k);
+            } else if (k < _failed) {
+                _failed = k;
+                failure = report != null ? report
+                    : String.format("shard %d failed %d times", k, tries[k]);
+            }
+        }
+        return failure;
+    }
+
+    /** Return true iff PENDING holds a shard that is still needed:
+     *  one before any shard that has failed. */
+    private boolean wanted(PriorityQueue<Integer> pending) {
+        return !pending.isEmpty() && pending.peek() < _failed;
+    }
+
+    /** Start and return a worker for shard #K, by PREFIX followed by
+     *  its arguments, with CONFIG, INPUT, and DIR as for run. */
+    private Process start(List<String> prefix, String config, String input,
+                          Path dir, int k) throws IOException {
+        List<String> command = new ArrayList<>(prefix);
+        command.add("--resume");
+        command.add("--checkpoint=" + file(dir, k, "checkpoint"));
+        if (k + 1 < _starts.size()) {
+            command.add("--end=" + _starts.get(k + 1).input());
+        }
+        command.add(config);
+        command.add(input);
+        command.add(file(dir, k, "out"));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(new File(file(dir, k, "err")));
+        return builder.start();
+    }
+
+    /** Wait for one of PROCESSES to end, and return it. */
+    private static Process finished(Iterable<Process> processes) {
+        List<CompletableFuture<Process>> exits = new ArrayList<>();
+        for (Process process : processes) {
+            exits.add(process.onExit());
+        }
+        return (Process) CompletableFuture.anyOf(
+            exits.toArray(new CompletableFuture<?>[exits.size()])).join();
+    }
+
+    /** Return the error in the input reported by the worker for shard
+     *  #K in DIR, or null if it reported none. */
+    private static String report(Path dir, int k) throws IOException {
+        Path err = new File(file(dir, k, "err")).toPath();
+        if (!Files.exists(err)) {
+            return null;
+        }
+        for (String line : Files.readAllLines(err)) {
+            if (line.startsWith(ERROR_PREFIX)) {
+                return line.substring(ERROR_PREFIX.length());
+            }
+        }
+        return null;
+    }
+
+    /** Return the name of the file in DIR of the given KIND for shard
+     *  #K. */
+    private static String file(Path dir, int k, String kind) {
+        return dir.resolve("shard" + k + "." + kind).toString();
+    }
+
+    /** Delete the directory DIR and the files in it. */
+    private static void deleteAll(Path dir) {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    /** Number of shards planned per worker, so that workers that finish
+     *  early find more to do. */
+    private static final int SHARDS_PER_WORKER = 4;
+
+    /** Number of times a worker for a shard is started before giving
+     *  up. */
+    private static final int MAX_TRIES = 3;
+
+    /** Start of the line in which a worker reports an error. */
+    private static final String ERROR_PREFIX = "Error: ";
+
+    /** Size of the input. */
+    private final long _size;
+
+    /** Number of workers run at once. */
+    private final int _workers;
+
+    /** Number of shards wanted. */
+    private final int _count;
+
+    /** Checkpoint at the start of each shard, or null for the first,
+     *  which starts at the beginning of the input. */
+    private final List<Checkpoint> _starts = new ArrayList<>();
+
+    /** Offset at or after which the next shard should start. */
+    private long _next;
+
+    /** The first shard that failed, or Integer.MAX_VALUE. */
+    private int _failed;
+}
@@ -0,0 +1,386 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Letter frequencies, index of coincidence, and periodicity of the
+ *  messages in a file in the input format of Main, for each section (a
+ *  setting line and the message lines that follow it) and in total.
+ *  The file is divided into as many pieces as there are processors, and
+ *  each piece is streamed through its own counters, which are combined
+ *  at the end.  Sections belong to the piece in which their setting
+ *  lines start.  Only files whose alphabet consists of ASCII characters
+ *  are handled, so that counting can work on bytes.
+ *  @author Osvaldo Valadez
+ */
+public final class Statistics {
+
+    /** Report statistics as specified by ARGS, where 2 <= ARGS.length
+     *  <= 3.  ARGS[0] is the name of a configuration file, whose
+     *  alphabet is used, and ARGS[1] the name of a file of messages.
+     *  ARGS[2] is optional and names the file to which the report is
+     *  written; otherwise it goes to the standard output. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw error("Only 2 or 3 command-line arguments allowed");
+            }
+            Alphabet alpha =
+                new Alphabet(new Scanner(Main.readFile(args[0])).next());
+            Statistics stats = new Statistics(alpha, args[1]);
+            PrintStream out = System.out;
+            if (args.length > 2) {
+                try {
+                    out = new PrintStream(new File(args[2]));
+                } catch (IOException excp) {
+                    throw error("could not open %s", args[2]);
+                }
+            }
+            stats.report(out, Runtime.getRuntime().availableProcessors());
+            out.close();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Statistics over ALPHA of the messages in the file named NAME. */
+    Statistics(Alphabet alpha, String name) {
+        _alphabet = alpha;
+        _name = name;
+        _index = new int[BYTE_VALUES];
+        for (int b = 0; b < BYTE_VALUES; b++) {
+            _index[b] = -1;
+        }
+        for (int i = 0; i < alpha.size(); i++) {
+            char c = alpha.toChar(i);
+            if (c >= ASCII) {
+                throw error("statistics need an ASCII alphabet");
+            }
+            _index[c] = i;
+        }
+        for (int b = 0; b < ASCII; b++) {
+            char upper = Character.toUpperCase((char) b);
+            if (_index[b] < 0 && alpha.contains(upper)) {
+                _index[b] = alpha.toInt(upper);
+            }
+        }
+    }
+
+    /** Write the report for each section and the total to OUT, using
+     *  THREADS threads. */
+    void report(PrintStream out, int threads) {
+        long length;
+        try {
+            length = Files.size(Paths.get(_name));
+        } catch (IOException excp) {
+            throw error("could not open %s", _name);
+        }
+        long piece = length / threads + 1;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Piece>> pieces = new ArrayList<>();
+        for (int k = 0; k < threads; k++) {
+            long start = Math.min(k * piece, length);
+            long end = Math.min(start + piece, length);
+            pieces.add(pool.submit(() -> scan(start, end)));
+        }
+        Counts total = new Counts();
+        long sections = 0;
+        try {
+            for (Future<Piece> future : pieces) {
+                Piece result = future.get();
+                try {
+                    sections += copyReport(result, sections, out);
+                } finally {
+                    result._report.delete();
+                }
+                total.add(result._total);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("could not read %s: %s", _name, excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        out.printf("total: %d sections, %s%n", sections, total.summary());
+        for (int i = 0; i < _alphabet.size(); i++) {
+            out.printf("%c %d %.5f%n", _alphabet.toChar(i), total._freq[i],
+                       total._length == 0 ? 0.0
+                       : (double) total._freq[i] / total._length);
+        }
+    }
+
+    /** Copy the section reports in RESULT to OUT, numbering them from
+     *  FIRST + 1.  Returns the number of sections copied. */
+    private long copyReport(Piece result, long first, PrintStream out) {
+        long n = 0;
+        try (BufferedReader report =
+             Files.newBufferedReader(result._report.toPath())) {
+            for (String line = report.readLine(); line != null;
+                 line = report.readLine()) {
+                n += 1;
+                out.printf("section %d %s%n", first + n, line);
+            }
+        } catch (IOException excp) {
+            throw error("could not read temporary report");
+        }
+        return n;
+    }
+
+    /** Return the statistics of the sections whose setting lines start
+     *  at byte offsets in [START .. END) of the input file.  As for
+     *  Main, a setting line is any line containing an asterisk, so the
+     *  characters of a line are held until its end shows what it is.
+     *  Reading stops at the first line from END on, unless a section
+     *  is open, in which case it stops at the next setting line. */
+    private Piece scan(long start, long end) throws IOException {
+        Piece result = new Piece();
+        result._report = File.createTempFile("enigma-stats", ".txt");
+        Counts section = new Counts();
+        int[] line = new int[LINE_SIZE];
+        int length = 0;
+        boolean inSection = false, setting = false, skipping;
+        long lineStart = start;
+        try (FileChannel in = FileChannel.open(Paths.get(_name),
+                                               StandardOpenOption.READ);
+             Writer report = new BufferedWriter(new OutputStreamWriter(
+                 new FileOutputStream(result._report),
+                 StandardCharsets.UTF_8))) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] bytes = buffer.array();
+            skipping = start > 0 && byteAt(in, start - 1) != '\n';
+            long pos = start;
+            boolean atEnd = false;
+            scanning:
+            while (!atEnd) {
+                buffer.clear();
+                int n = in.read(buffer, pos);
+                if (n <= 0) {
+                    bytes[0] = '\n';
+                    n = 1;
+                    atEnd = true;
+                }
+                for (int i = 0; i < n; i++, pos++) {
+                    int b = bytes[i] & BYTE_MASK;
+                    if (skipping) {
+                        skipping = b != '\n';
+                        lineStart = pos + 1;
+                        if (!skipping && lineStart >= end) {
+                            break scanning;
+                        }
+                    } else if (b != '\n') {
+                        setting |= b == '*';
+                        if (_index[b] >= 0) {
+                            if (length == line.length) {
+                                line = Arrays.copyOf(line, 2 * length);
+                            }
+                            line[length++] = _index[b];
+                        }
+                    } else if (setting) {
+                        if (lineStart >= end) {
+                            break scanning;
+                        }
+                        if (inSection) {
+                            finish(section, result, report);
+                        }
+                        report.write("at byte " + lineStart + ": ");
+                        inSection = true;
+                        setting = false;
+                        length = 0;
+                        lineStart = pos + 1;
+                    } else {
+                        for (int k = 0; inSection && k < length; k++) {
+                            section.count(line[k]);
+                        }
+                        length = 0;
+                        lineStart = pos + 1;
+                        if (!inSection && lineStart >= end) {
+                            break scanning;
+                        }
+                    }
+                }
+            }
+            if (inSection) {
+                finish(section, result, report);
+            }
+        }
+        return result;
+    }
+
+    /** Record the statistics of the section counted in SECTION in
+     *  RESULT and REPORT, and reset SECTION for the next section. */
+    private void finish(Counts section, Piece result, Writer report)
+        throws IOException {
+        report.write(section.summary());
+        report.write(System.lineSeparator());
+        result._total.add(section);
+        section.clear();
+    }
+
+    /** Return the byte at offset POS of IN. */
+    private static int byteAt(FileChannel in, long pos) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        in.read(one, pos);
+        return one.get(0);
+    }
+
+    /** The results of scanning one piece of the input. */
+    private final class Piece {
+        /** Temporary file holding the report of each section. */
+        private File _report;
+
+        /** Combined counts of all sections. */
+        private final Counts _total = new Counts();
+    }
+
+    /** Counts of the characters of some text, by alphabet index, and of
+     *  the coincidences between characters some distance apart. */
+    private final class Counts {
+
+        /** Count C, the alphabet index of the next character. */
+        void count(int c) {
+            _freq[c] += 1;
+            int limit = (int) Math.min(_counted, MAX_PERIOD);
+            for (int p = 1; p <= limit; p++) {
+                if (_recent[(_next - p) & (MAX_PERIOD - 1)] == c) {
+                    _coincidences[p] += 1;
+                }
+            }
+            _recent[_next] = c;
+            _next = (_next + 1) & (MAX_PERIOD - 1);
+            _counted += 1;
+            _length += 1;
+        }
+
+        /** Add the counts in OTHER to mine, treating its text as
+         *  separate from mine, so that no coincidences are counted
+         *  between them. */
+        void add(Counts other) {
+            for (int i = 0; i < _freq.length; i++) {
+                _freq[i] += other._freq[i];
+            }
+            for (int p = 1; p <= MAX_PERIOD; p++) {
+                _coincidences[p] += other._coincidences[p];
+                _pairs[p] += other.pairs(p);
+            }
+            _length += other._length;
+        }
+
+        /** Reset all my counts to 0. */
+        void clear() {
+            for (int i = 0; i < _freq.length; i++) {
+                _freq[i] = 0;
+            }
+            for (int p = 1; p <= MAX_PERIOD; p++) {
+                _coincidences[p] = _pairs[p] = 0;
+            }
+            _length = _counted = 0;
+            _next = 0;
+        }
+
+        /** Return the number of pairs of my characters P apart. */
+        long pairs(int p) {
+            return _pairs[p] + Math.max(0, _counted - p);
+        }
+
+        /** Return a one-line summary of my counts: the length, index of
+         *  coincidence, and the distance at which characters most often
+         *  coincide. */
+        String summary() {
+            long sum = 0;
+            for (long f : _freq) {
+                sum += f * (f - 1);
+            }
+            double ioc = _length < 2 ? 0.0
+                : (double) sum / ((double) _length * (_length - 1));
+            int period = 0;
+            double kappa = 0.0;
+            for (int p = 1; p <= MAX_PERIOD; p++) {
+                long pairs = pairs(p);
+                if (pairs > 0 && (double) _coincidences[p] / pairs > kappa) {
+                    period = p;
+                    kappa = (double) _coincidences[p] / pairs;
+                }
+            }
+            return String.format("%d characters, IoC %.5f, "
+                                 + "period %d (kappa %.5f)",
+                                 _length, ioc, period, kappa);
+        }
+
+        /** Number of occurrences of each character. */
+        private final long[] _freq = new long[_alphabet.size()];
+
+        /** Number of positions whose character equals the one p
+         *  before, indexed by p. */
+        private final long[] _coincidences = new long[MAX_PERIOD + 1];
+
+        /** Number of pairs of characters p apart in the texts added by
+         *  add(), indexed by p. */
+        private final long[] _pairs = new long[MAX_PERIOD + 1];
+
+        /** The last MAX_PERIOD characters counted, indexed by their
+         *  positions modulo MAX_PERIOD. */
+        private final int[] _recent = new int[MAX_PERIOD];
+
+        /** Index in _recent of the next character counted. */
+        private int _next;
+
+        /** Number of characters in all, and number passed to count(). */
+        private long _length, _counted;
+    }
+
+    /** Largest distance between characters checked for coincidences.
+     *  Must be a power of 2. */
+    static final int MAX_PERIOD = 32;
+
+    /** Initial capacity for the characters of a line. */
+    private static final int LINE_SIZE = 1 << 10;
+
+    /** Size of the buffer through which each piece is read. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Number of possible byte values, and of ASCII characters. */
+    private static final int BYTE_VALUES = 256, ASCII = 128;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Alphabet whose characters are counted. */
+    private final Alphabet _alphabet;
+
+    /** Name of the input file. */
+    private final String _name;
+
+    /** Alphabet index of each byte, after conversion to upper case, or
+     *  -1 for bytes not in the alphabet. */
+    private final int[] _index;
+}
@@ -0,0 +1,356 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+/** A snapshot of a Machine, with an alphabet of any size, laid out for
+ *  converting runs of alphabet indices in bulk.  It works as
+ *  ByteConverter does, with indices wrapped by comparison rather than
+ *  by a mask: the plugboard and the rightmost rotor are applied through
+ *  one table per direction, indexed by that rotor's setting and the
+ *  input, and everything to their left through a single core table.
+ *  The core table, which folds together the rotor left of the rightmost
+ *  one, the composite of the rest, and the way back, is rebuilt
+ *  whenever that rotor moves, about once every alphabet-size steps, so
+ *  that each character costs three lookups.  The two big tables have
+ *  size() * size() entries each (see memory), and are built once per
+ *  snapshot, which must therefore be taken again after the machine is
+ *  set up anew, but not after it is merely stepped.  They are kept as
+ *  a TableStorage says, on the heap or off it.
+ *  @author Osvaldo Valadez
+ */
+class TableConverter implements BulkConverter {
+
+    /** Return the number of bytes used by a converter for a machine
+     *  whose alphabet has SIZE characters and which has NUMROTORS rotor
+     *  slots. */
+    static long memory(int size, int numRotors) {
+        return tableBytes(size, Character.BYTES)
+            + (3L * numRotors + 6) * Integer.BYTES * size;
+    }
+
+    /** Return the number of bytes taken by the two big tables for an
+     *  alphabet of SIZE characters with entries of WIDTH bytes. */
+    static long tableBytes(int size, int width) {
+        return 2L * width * size * size;
+    }
+
+    /** A converter for MACHINE, which must be set up, in its current
+     *  state, with its big tables on the heap. */
+    TableConverter(Machine machine) {
+        this(machine, new TableStorage(TableStorage.HEAP));
+    }
+
+    /** A converter for MACHINE, which must be set up, in its current
+     *  state, with its big tables kept in STORAGE. */
+    TableConverter(Machine machine, TableStorage storage) {
+        _machine = machine;
+        Rotor[] rotors = machine.getRotors();
+        int n = rotors.length;
+        int size = machine.alphabet().size();
+        _size = size;
+        _last = n - 1;
+        _inner = Math.max(0, _last - 2);
+        _forward = new int[n * size];
+        _inverse = new int[n * size];
+        _notches = new boolean[n * size];
+        _rotates = new boolean[n];
+        _posn = new int[n];
+        for (int x = 0; x < n; x++) {
+            System.arraycopy(rotors[x].forwardTable(), 0, _forward,
+                             x * size, size);
+            System.arraycopy(rotors[x].inverseTable(), 0, _inverse,
+                             x * size, size);
+            if (rotors[x].notchTable() != null) {
+                System.arraycopy(rotors[x].notchTable(), 0, _notches,
+                                 x * size, size);
+            }
+            _rotates[x] = rotors[x].rotates();
+            _posn[x] = -1;
+        }
+        int[] plugs = new int[size];
+        Permutation plugboard = machine.getPlugboard();
+        for (int c = 0; c < size; c++) {
+            plugs[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        int lastBase = _last * size;
+        _outBase = size * size;
+        if (storage.onHeap()) {
+            _entries = new char[2 * _outBase];
+            _tables = null;
+            _width = Character.BYTES;
+        } else {
+            _entries = null;
+            _width = storage.width(size);
+            _tables = storage.buffer(tableBytes(size, _width));
+        }
+        for (int p = 0; p < size; p++) {
+            int row = p * size;
+            for (int c = 0; c < size; c++) {
+                put(row + c,
+                    wrap(_forward[lastBase + wrap(plugs[c] + p)] - p));
+                put(_outBase + row + c,
+                    plugs[wrap(_inverse[lastBase + wrap(c + p)] - p)]);
+            }
+        }
+        _clear = new int[size];
+        boolean pushes = _last >= 2 && _rotates[_last - 1];
+        for (int k = 2 * size - 1; k >= 0; k--) {
+            int p = k % size;
+            if (pushes && _notches[lastBase + p]) {
+                _clear[p] = 0;
+            } else {
+                _clear[p] = Math.min(size, 1 + _clear[wrap(p + 1)]);
+            }
+        }
+        _cached = new int[size];
+        _core = new int[size];
+    }
+
+    @Override
+    public void convert(int[] indices, int start, int end) {
+        load();
+        int step = _rotates[_last] ? 1 : 0;
+        int p = _posn[_last];
+        boolean quiet = quiet();
+        int i = start;
+        while (i < end) {
+            int run = quiet ? Math.min(_clear[p], end - i) : 0;
+            if (run > 0) {
+                convertRun(indices, i, i + run, p, step);
+                p = step == 0 ? p : (int) ((p + (long) run) % _size);
+                i += run;
+            } else {
+                _posn[_last] = p;
+                int moved = step();
+                if (moved <= _inner) {
+                    composite();
+                }
+                if (moved < _last) {
+                    core();
+                }
+                quiet = quiet();
+                p = _posn[_last];
+                int row = p * _size;
+                indices[i] =
+                    get(_outBase + row + _core[get(row + indices[i])]);
+                i += 1;
+            }
+        }
+        _posn[_last] = p;
+        Rotor[] rotors = _machine.getRotors();
+        for (int x = 1; x <= _last; x++) {
+            rotors[x].set(_posn[x]);
+        }
+    }
+
+    /** Convert INDICES[START .. END - 1], during which only the
+     *  rightmost rotor moves, by STEP each time, from setting P.  There
+     *  is a copy of the loop for each way of storing the tables, so
+     *  that each is compiled for just one. */
+    private void convertRun(int[] indices, int start, int end, int p,
+                            int step) {
+        int[] core = _core;
+        int size = _size, out = _outBase;
+        if (_entries != null) {
+            char[] entries = _entries;
+            for (int i = start; i < end; i++) {
+                p += step;
+                if (p == size) {
+                    p = 0;
+                }
+                int row = p * size;
+                indices[i] =
+                    entries[out + row + core[entries[row + indices[i]]]];
+            }
+        } else if (_width == 1) {
+            ByteBuffer tables = _tables;
+            for (int i = start; i < end; i++) {
+                p += step;
+                if (p == size) {
+                    p = 0;
+                }
+                int row = p * size;
+                int k = core[tables.get(row + indices[i]) & BYTE_MASK];
+                indices[i] = tables.get(out + row + k) & BYTE_MASK;
+            }
+        } else {
+            ByteBuffer tables = _tables;
+            for (int i = start; i < end; i++) {
+                p += step;
+                if (p == size) {
+                    p = 0;
+                }
+                int row = (p * size) << 1;
+                int k = core[tables.getChar(row + (indices[i] << 1))];
+                indices[i] = tables.getChar((out << 1) + row + (k << 1));
+            }
+        }
+    }
+
+    /** Set entry I of the big tables, taken as one, to V. */
+    private void put(int i, int v) {
+        if (_entries != null) {
+            _entries[i] = (char) v;
+        } else if (_width == 1) {
+            _tables.put(i, (byte) v);
+        } else {
+            _tables.putChar(i * _width, (char) v);
+        }
+    }
+
+    /** Return entry I of the big tables, taken as one. */
+    private int get(int i) {
+        if (_entries != null) {
+            return _entries[i];
+        } else if (_width == 1) {
+            return _tables.get(i) & BYTE_MASK;
+        }
+        return _tables.getChar(i * _width);
+    }
+
+    /** Read the settings of my machine's rotors, rebuilding the tables
+     *  that depend on those that changed since I last looked. */
+    private void load() {
+        Rotor[] rotors = _machine.getRotors();
+        boolean inner = false, middle = false;
+        for (int x = 1; x <= _last; x++) {
+            int setting = rotors[x].setting();
+            if (setting != _posn[x]) {
+                _posn[x] = setting;
+                inner |= x <= _inner;
+                middle |= x < _last;
+            }
+        }
+        if (inner || _posn[0] < 0) {
+            _posn[0] = 0;
+            composite();
+        }
+        if (middle || _last == 1) {
+            core();
+        }
+    }
+
+    /** Advance the settings of the rotors as Machine.move() does.
+     *  Returns the leftmost slot that moved, or _last + 1 if none
+     *  did. */
+    private int step() {
+        int leftmost = _last + 1;
+        for (int x = 1; x <= _last; x++) {
+            boolean pushed = x == _last
+                || _notches[(x + 1) * _size + _posn[x + 1]]
+                || (_rotates[x - 1] && _notches[x * _size + _posn[x]]);
+            if (_rotates[x] && pushed) {
+                _posn[x] = wrap(_posn[x] + 1);
+                leftmost = Math.min(leftmost, x);
+            }
+        }
+        return leftmost;
+    }
+
+    /** Return true iff no rotor in slots 1 .. _last - 2 is pushed by
+     *  the notch of its right neighbor, so that the next step moves at
+     *  most the two rightmost rotors. */
+    private boolean quiet() {
+        for (int x = 1; x <= _last - 2; x++) {
+            if (_rotates[x] && _notches[(x + 1) * _size + _posn[x + 1]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Fill in _cached with the mapping performed by the rotors in slots
+     *  0 .. _inner at their current settings, from the contacts on the
+     *  right of slot _inner through the reflector and back. */
+    private void composite() {
+        for (int c = 0; c < _size; c++) {
+            int d = c;
+            for (int x = _inner; x >= 0; x--) {
+                d = wrap(_forward[x * _size + wrap(d + _posn[x])]
+                         - _posn[x]);
+            }
+            for (int x = 1; x <= _inner; x++) {
+                d = wrap(_inverse[x * _size + wrap(d + _posn[x])]
+                         - _posn[x]);
+            }
+            _cached[c] = d;
+        }
+    }
+
+    /** Fill in _core with the mapping performed by everything left of
+     *  the rightmost rotor, from its left contacts and back: the rotor
+     *  in slot _last - 1, if it is not the reflector, then _cached. */
+    private void core() {
+        if (_last < 2) {
+            System.arraycopy(_cached, 0, _core, 0, _size);
+            return;
+        }
+        int base = (_last - 1) * _size, q = _posn[_last - 1];
+        for (int c = 0; c < _size; c++) {
+            int d = wrap(_forward[base + wrap(c + q)] - q);
+            d = _cached[d];
+            _core[c] = wrap(_inverse[base + wrap(d + q)] - q);
+        }
+    }
+
+    /** Return K, which is in the range -size() .. 2 * size() - 1,
+     *  wrapped into the alphabet. */
+    private int wrap(int k) {
+        if (k < 0) {
+            return k + _size;
+        } else if (k >= _size) {
+            return k - _size;
+        }
+        return k;
+    }
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The machine I convert for. */
+    private final Machine _machine;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Slot of the rightmost rotor, and of the leftmost rotor not in
+     *  the composite. */
+    private final int _last, _inner;
+
+    /** Forward and inverse tables of each slot, _size entries apiece. */
+    private final int[] _forward, _inverse;
+
+    /** Whether each slot is at a notch at each setting, _size entries
+     *  apiece. */
+    private final boolean[] _notches;
+
+    /** Whether each slot's rotor moves. */
+    private final boolean[] _rotates;
+
+    /** Setting of each slot when last loaded or stepped, or -1 before
+     *  the first load. */
+    private final int[] _posn;
+
+    /** The big tables, taken as one: the plugboard and rightmost rotor,
+     *  inward, indexed by the rotor's setting times _size plus the
+     *  input, followed by the same outward, from _outBase on.  Their
+     *  entries are in _entries on the heap, or else in _tables, _width
+     *  bytes apiece. */
+    private final char[] _entries;
+
+    /** See _entries. */
+    private final ByteBuffer _tables;
+
+    /** See _entries. */
+    private final int _width, _outBase;
+
+    /** Number of settings, starting at each setting of the rightmost
+     *  rotor, through which it steps without pushing its neighbor. */
+    private final int[] _clear;
+
+    /** Mapping through slots 0 .. _inner (see composite). */
+    private final int[] _cached;
+
+    /** Mapping through slots 0 .. _last - 1 (see core). */
+    private final int[] _core;
+}
@@ -0,0 +1,110 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static enigma.EnigmaException.*;
+
+/** Where a TableConverter keeps its two big tables: on the Java heap as
+ *  arrays, or off the heap, in a direct buffer or in a buffer mapped
+ *  from a temporary file, where the garbage collector never scans or
+ *  copies them, and where the operating system may page them out.
+ *  Off the heap, entries are bytes when the alphabet has at most 256
+ *  characters, and two-byte chars otherwise.  A storage off the heap
+ *  keeps one buffer, which it hands to each converter it serves in
+ *  turn, growing it when need be, so that the tables for one setting
+ *  line are overwritten by those for the next rather than left for the
+ *  collector.  A converter's tables are therefore valid only until the
+ *  next converter is made with the same storage, as in Main, which
+ *  converts one section at a time.
+ *  @author Osvaldo Valadez
+ */
+class TableStorage {
+
+    /** Names of the kinds of storage. */
+    static final String HEAP = "heap", DIRECT = "direct", MAPPED = "mapped";
+
+    /** Return true iff NAME names a kind of storage. */
+    static boolean valid(String name) {
+        return name.equals(HEAP) || name.equals(DIRECT)
+            || name.equals(MAPPED);
+    }
+
+    /** Storage of the kind named NAME. */
+    TableStorage(String name) {
+        if (!valid(name)) {
+            throw error("unknown table storage: %s", name);
+        }
+        _name = name;
+    }
+
+    /** Return true iff I keep tables in arrays on the heap. */
+    boolean onHeap() {
+        return _name.equals(HEAP);
+    }
+
+    /** Return the number of bytes each entry of the tables for an
+     *  alphabet of SIZE characters takes in me. */
+    int width(int size) {
+        return onHeap() || size > BYTE_LIMIT ? Character.BYTES : 1;
+    }
+
+    /** Return a buffer, off the heap, of at least BYTES bytes, in native
+     *  order, replacing the one handed out last. */
+    ByteBuffer buffer(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw error("tables of %d bytes are too big", bytes);
+        }
+        if (_buffer == null || _buffer.capacity() < bytes) {
+            _buffer = null;
+            _buffer = _name.equals(MAPPED) ? map((int) bytes)
+                : ByteBuffer.allocateDirect((int) bytes);
+            _buffer.order(ByteOrder.nativeOrder());
+        }
+        return _buffer;
+    }
+
+    /** Return the number of bytes I hold off the heap. */
+    long offHeapBytes() {
+        return _buffer == null ? 0 : _buffer.capacity();
+    }
+
+    @Override
+    public String toString() {
+        return _name;
+    }
+
+    /** Return a buffer of BYTES bytes mapped from a new temporary file,
+     *  which is deleted at once, so that it disappears when the buffer
+     *  is unmapped, however the process ends. */
+    private static ByteBuffer map(int bytes) {
+        File file = null;
+        try {
+            file = File.createTempFile("enigma", ".tables");
+            try (RandomAccessFile tables = new RandomAccessFile(file, "rw")) {
+                tables.setLength(bytes);
+                return tables.getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+        } catch (IOException excp) {
+            throw error("could not map tables: %s", excp.getMessage());
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Largest alphabet whose tables off the heap have byte entries. */
+    private static final int BYTE_LIMIT = 256;
+
+    /** Name of my kind. */
+    private final String _name;
+
+    /** The buffer handed out last, or null. */
+    private ByteBuffer _buffer;
+}
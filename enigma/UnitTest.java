@@ -10,7 +10,8 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTestCopy.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTestCopy.class, MovingRotorTest.class,
+                          MachineTest.class, NGramsTest.class);
     }
 
 }
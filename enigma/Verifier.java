@@ -0,0 +1,395 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/** A check, made while Main runs, that every message line it converts
+ *  in byte mode converts back to its input.  Since an Enigma machine is
+ *  its own inverse, a second machine, configured from the same file
+ *  and set up by the same setting lines, converts the output of each
+ *  line, and the result is compared with the line's input.  The second
+ *  machine runs on a thread of its own, so that on a machine with a
+ *  core to spare, checking costs Main only the copying of each line's
+ *  input and output, as alphabet indices, into batches, which pass to
+ *  the checking thread through a short queue and come back empty to be
+ *  reused.  Mismatches are reported on an error stream as they are
+ *  found, by section (the number of the setting line, counting from
+ *  the first that this run reads, and the line itself) and the offset
+ *  in the section of the first character that fails to convert back.
+ *  @author Osvaldo Valadez
+ */
+class Verifier {
+
+    /** A verifier for a Main configured by the text CONFIG, converting
+     *  with the engine named ENGINE and tables stored as STORAGE names
+     *  (see EngineChoice and TableStorage), with indicators at the
+     *  start of each message line iff INDICATORS, reporting mismatches
+     *  on ERR. */
+    Verifier(String config, String engine, String storage,
+             boolean indicators, PrintStream err) {
+        _main = new Main(new Scanner(config), null, null);
+        _machine = _main.readConfig();
+        _engineName = engine;
+        _storage = new TableStorage(storage);
+        _indicators = indicators;
+        _err = err;
+        for (int i = 0; i < QUEUE_LENGTH; i++) {
+            _empty.add(new Batch());
+        }
+        _batch = takeEmpty();
+        _thread = new Thread(this::run, "enigma verifier");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /** Convert with CHOICE, the engine Main chose, rather than with one
+     *  of my own choosing, but with tables of my own.  Must precede the
+     *  first line recorded. */
+    void engine(EngineChoice choice) {
+        _engine = choice.in(_storage);
+    }
+
+    /** Put my machine in the state recorded by CHECKPOINT, in the
+     *  section it records, before any line is checked. */
+    void restore(Checkpoint checkpoint) {
+        checkpoint.restore(_machine);
+        _sections = 1;
+        _setting = checkpoint.setting();
+        _section = 1;
+        _label = _setting;
+    }
+
+    /** Start a new section, set up by the setting line SETTING, before
+     *  the next line. */
+    void section(String setting) {
+        _sections += 1;
+        _setting = setting;
+    }
+
+    /** Record that the next line to check has as input the alphabet
+     *  indices INDICES[0 .. K - 1], indicator and all. */
+    void input(int[] indices, int k) {
+        if (!_batch.fits(2 * k)) {
+            send();
+            _batch.fits(2 * k);
+        }
+        _batch.addInput(indices, k, _sections, _setting);
+    }
+
+    /** Record that the line whose input was last recorded converted to
+     *  OUTPUT[FROM .. K - 1]. */
+    void output(int[] output, int from, int k) {
+        _batch.addOutput(output, from, k);
+    }
+
+    /** Check the lines recorded so far and wait for all checking to
+     *  end, then fail if any did not convert back.  Returns the number
+     *  of characters checked. */
+    long finish() {
+        send();
+        _full.add(END);
+        try {
+            _thread.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("verification interrupted");
+        }
+        if (_failure != null) {
+            throw _failure;
+        }
+        if (_mismatches > 0) {
+            throw error("verification failed: %d message lines did not"
+                        + " convert back", _mismatches);
+        }
+        return _checked;
+    }
+
+    /** Return the number of nanoseconds spent waiting for the checking
+     *  thread to return a batch. */
+    long waitNanos() {
+        return _waitNanos;
+    }
+
+    /** Hand the current batch to the checking thread, and start an
+     *  empty one. */
+    private void send() {
+        if (_batch._lines == 0) {
+            return;
+        }
+        _full.add(_batch);
+        _batch = takeEmpty();
+    }
+
+    /** Return an empty batch, waiting for the checking thread to return
+     *  one if need be. */
+    private Batch takeEmpty() {
+        Batch batch = _empty.poll();
+        if (batch == null) {
+            long start = System.nanoTime();
+            try {
+                batch = _empty.take();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("verification interrupted");
+            }
+            _waitNanos += System.nanoTime() - start;
+        }
+        batch.clear();
+        return batch;
+    }
+
+    /** Check the batches sent until END arrives.  After a failure, the
+     *  rest are only returned. */
+    private void run() {
+        try {
+            for (Batch batch = _full.take(); batch != END;
+                 batch = _full.take()) {
+                if (_failure == null) {
+                    try {
+                        check(batch);
+                    } catch (EnigmaException | IllegalStateException excp) {
+                        _failure = excp instanceof EnigmaException
+                            ? (EnigmaException) excp
+                            : error("verification failed: %s", excp);
+                    }
+                }
+                _empty.add(batch);
+            }
+        } catch (InterruptedException excp) {
+            _failure = error("verification interrupted");
+        }
+    }
+
+    /** Check the lines of BATCH. */
+    private void check(Batch batch) {
+        int[] text = batch._data;
+        for (int line = 0; line < batch._lines; line++) {
+            if (batch._sections[line] != _section) {
+                startSection(batch._sections[line], batch._settings[line]);
+            }
+            int start = batch._starts[line], split = batch._splits[line],
+                end = batch._ends[line];
+            int length = end - split, from = split - start - length;
+            if (from > 0) {
+                _key = _key.length < from ? new int[from] : _key;
+                System.arraycopy(text, start, _key, 0, from);
+                _machine.rekey(_ground, _key, 0);
+            }
+            if (_converter == null) {
+                for (int j = split; j < end; j++) {
+                    text[j] = _machine.convert(text[j]);
+                }
+            } else {
+                _converter.convert(text, split, end);
+            }
+            for (int j = 0; j < length; j++) {
+                if (text[split + j] != text[start + from + j]) {
+                    report(j);
+                    break;
+                }
+            }
+            _offset += length;
+            _checked += length;
+        }
+    }
+
+    /** Set up my machine by SETTING, at the start of section number
+     *  SECTION. */
+    private void startSection(int section, String setting) {
+        _main.setUp(_machine, setting);
+        if (_indicators) {
+            _ground = _ground == null ? new int[_machine.numRotors()]
+                : _ground;
+            _machine.saveSettings(_ground);
+        }
+        if (_engine == null) {
+            _engine = new EngineChoice(_machine, _engineName, _storage);
+        }
+        double mean = _started == 0 ? Double.POSITIVE_INFINITY
+            : (double) _checked / _started;
+        _converter = _engine.converter(_machine, mean);
+        _started += 1;
+        _section = section;
+        _label = setting;
+        _offset = 0;
+    }
+
+    /** Report that the current line failed to convert back at its
+     *  character J. */
+    private void report(int j) {
+        _mismatches += 1;
+        if (_mismatches <= MAX_REPORTS) {
+            _err.printf("verify: section %d (%s): mismatch at character"
+                        + " %d%n", _section, _label, _offset + j);
+        }
+    }
+
+    /** A batch of lines to check: for each line, its input and then
+     *  its output, as alphabet indices, one after the other in one
+     *  array, and the number and setting line of its section. */
+    private static final class Batch {
+
+        /** Return true iff TOTAL more indices fit in me, growing me to
+         *  fit them if I am empty. */
+        boolean fits(int total) {
+            if (_length + total <= _data.length) {
+                return true;
+            } else if (_lines > 0) {
+                return false;
+            }
+            _data = new int[total];
+            return true;
+        }
+
+        /** Add a line of section number SECTION, set up by SETTING,
+         *  whose input is INDICES[0 .. K - 1]. */
+        void addInput(int[] indices, int k, int section, String setting) {
+            if (_lines == _starts.length) {
+                int n = 2 * _lines;
+                _starts = Arrays.copyOf(_starts, n);
+                _splits = Arrays.copyOf(_splits, n);
+                _ends = Arrays.copyOf(_ends, n);
+                _sections = Arrays.copyOf(_sections, n);
+                _settings = Arrays.copyOf(_settings, n);
+            }
+            System.arraycopy(indices, 0, _data, _length, k);
+            _starts[_lines] = _length;
+            _length += k;
+            _splits[_lines] = _length;
+            _ends[_lines] = _length;
+            _sections[_lines] = section;
+            _settings[_lines] = setting;
+            _lines += 1;
+        }
+
+        /** Give the last line added the output OUTPUT[FROM .. K - 1]. */
+        void addOutput(int[] output, int from, int k) {
+            System.arraycopy(output, from, _data, _length, k - from);
+            _length += k - from;
+            _ends[_lines - 1] = _length;
+        }
+
+        /** Make me empty. */
+        void clear() {
+            _length = 0;
+            _lines = 0;
+            Arrays.fill(_settings, null);
+        }
+
+        /** Inputs and outputs of my lines. */
+        private int[] _data = new int[BATCH_SIZE];
+
+        /** Number of entries of _data in use. */
+        private int _length;
+
+        /** Number of lines I hold. */
+        private int _lines;
+
+        /** Where in _data the input of each line starts, where its
+         *  output starts, and where its output ends. */
+        private int[] _starts = new int[LINES], _splits = new int[LINES],
+            _ends = new int[LINES];
+
+        /** Number of the section of each line. */
+        private int[] _sections = new int[LINES];
+
+        /** Setting line of the section of each line. */
+        private String[] _settings = new String[LINES];
+    }
+
+    /** Number of batches in use. */
+    private static final int QUEUE_LENGTH = 4;
+
+    /** Initial number of indices in a batch. */
+    private static final int BATCH_SIZE = 1 << 16;
+
+    /** Initial number of lines in a batch. */
+    private static final int LINES = 1 << 10;
+
+    /** Most mismatches reported one by one. */
+    private static final int MAX_REPORTS = 10;
+
+    /** Marks the end of the batches. */
+    private static final Batch END = new Batch();
+
+    /** Sets up my machine by setting lines. */
+    private final Main _main;
+
+    /** Machine that converts each line's output back. */
+    private final Machine _machine;
+
+    /** Name of the engine choice. */
+    private final String _engineName;
+
+    /** Where the table engine keeps my tables. */
+    private final TableStorage _storage;
+
+    /** True iff message lines start with indicators. */
+    private final boolean _indicators;
+
+    /** Where mismatches are reported. */
+    private final PrintStream _err;
+
+    /** Batches ready to check. */
+    private final BlockingQueue<Batch> _full =
+        new ArrayBlockingQueue<>(QUEUE_LENGTH + 1);
+
+    /** Batches ready to fill. */
+    private final BlockingQueue<Batch> _empty =
+        new ArrayBlockingQueue<>(QUEUE_LENGTH);
+
+    /** The checking thread. */
+    private final Thread _thread;
+
+    /** The batch being filled. */
+    private Batch _batch;
+
+    /** Nanoseconds spent waiting for empty batches. */
+    private long _waitNanos;
+
+    /** The engine choice for my machine, once made. */
+    private EngineChoice _engine;
+
+    /** Converter for the current section, or null. */
+    private BulkConverter _converter;
+
+    /** Ground setting of the current section, in indicator mode. */
+    private int[] _ground;
+
+    /** Scratch space for a message key. */
+    private int[] _key = new int[0];
+
+    /** Number of sections started by the thread recording lines, and
+     *  the setting line of the last. */
+    private int _sections;
+
+    /** Setting line of the last section started by the thread recording
+     *  lines. */
+    private String _setting;
+
+    /** Number of the section being checked. */
+    private int _section;
+
+    /** Setting line of the section being checked. */
+    private String _label;
+
+    /** Number of sections set up by the checking thread. */
+    private int _started;
+
+    /** Characters checked so far in the current section. */
+    private long _offset;
+
+    /** Characters checked so far. */
+    private volatile long _checked;
+
+    /** Number of lines that failed to convert back. */
+    private volatile long _mismatches;
+
+    /** The error that stopped checking, or null. */
+    private volatile EnigmaException _failure;
+}
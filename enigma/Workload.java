@@ -0,0 +1,313 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Synthetic machine configurations and messages, generated
+ *  reproducibly from a seed, for measuring and testing the simulator on
+ *  inputs of any size.  Every configuration and setting line produced
+ *  is acceptable to Main.
+ *  @author Osvaldo Valadez
+ */
+class Workload {
+
+    /** Generate a configuration file and an input file as specified by
+     *  ARGS, where ARGS.length == 9: the seed, alphabet size, number of
+     *  rotor slots, number of pawls, number of rotors of each kind to
+     *  offer, number of sections, and number of characters per message,
+     *  followed by the names of the configuration and input files to
+     *  write.  Both are written in UTF-8, and the input is streamed, so
+     *  that it may be much larger than memory. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 9) {
+                throw error("Exactly 9 command-line arguments allowed");
+            }
+            long[] values = new long[7];
+            for (int i = 0; i < values.length; i++) {
+                try {
+                    values[i] = Long.parseLong(args[i]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad number: %s", args[i]);
+                }
+            }
+            Workload workload =
+                new Workload(values[0], (int) values[1], (int) values[2],
+                             (int) values[3], (int) values[4]);
+            try (Writer config = open(args[7])) {
+                config.write(workload.config());
+            }
+            try (Writer input = open(args[8])) {
+                for (long i = 0; i < values[5]; i++) {
+                    input.write(workload.settingLine(PLUGS));
+                    input.write('\n');
+                    workload.writeMessage(input, values[6], LINE_GROUPS);
+                }
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return a buffered UTF-8 writer on the file named NAME. */
+    private static Writer open(String name) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(name), StandardCharsets.UTF_8),
+            BUFFER_SIZE);
+    }
+
+    /** A workload generated from SEED for a machine whose alphabet has
+     *  SIZE characters, with NUMROTORS rotor slots and NUMPAWLS pawls,
+     *  and whose configuration offers AVAILABLE rotors of each kind
+     *  (reflectors, non-moving rotors, and moving rotors), at least as
+     *  many as are needed to fill the slots. */
+    Workload(long seed, int size, int numRotors, int numPawls,
+             int available) {
+        if (size < 2 || numRotors < 2 || numPawls < 0
+            || numPawls >= numRotors) {
+            throw error("bad workload shape");
+        }
+        _random = new Random(seed);
+        _alphabet = alphabet(size);
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _available = Math.max(available, numRotors);
+    }
+
+    /** Return a string of SIZE distinct characters suitable for an
+     *  alphabet that Main can read: none is whitespace, a parenthesis,
+     *  or an asterisk, and each is its own upper case.  The first 26 are
+     *  the upper-case letters. */
+    static String alphabet(int size) {
+        StringBuilder result = new StringBuilder();
+        for (char c = 'A'; c <= 'Z' && result.length() < size; c++) {
+            result.append(c);
+        }
+        for (char c = '!'; result.length() < size; c++) {
+            if (c == Character.MAX_VALUE) {
+                throw error("alphabet of %d characters too large", size);
+            }
+            if (usable(c) && (c < 'A' || c > 'Z')) {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return true iff C may appear in a generated alphabet. */
+    private static boolean usable(char c) {
+        return Character.isDefined(c) && !Character.isWhitespace(c)
+            && !Character.isISOControl(c) && !Character.isSurrogate(c)
+            && !Character.isSpaceChar(c) && c != '(' && c != ')'
+            && c != '*' && String.valueOf(c).toUpperCase()
+                .equals(String.valueOf(c));
+    }
+
+    /** Return my alphabet. */
+    String alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the text of a configuration file for my machine. */
+    String config() {
+        StringBuilder result = new StringBuilder();
+        result.append(_alphabet).append('\n');
+        result.append(_numRotors).append(' ').append(_numPawls).append('\n');
+        for (int i = 0; i < _available; i++) {
+            result.append(reflectorName(i)).append(" R ")
+                .append(cycles(reflector())).append('\n');
+        }
+        for (int i = 0; i < _available; i++) {
+            result.append(fixedName(i)).append(" N ")
+                .append(cycles(shuffle())).append('\n');
+        }
+        for (int i = 0; i < _available; i++) {
+            result.append(movingName(i)).append(" M")
+                .append(notches()).append(' ')
+                .append(cycles(shuffle())).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return a random setting line for my machine, with a plugboard of
+     *  up to PLUGS pairs. */
+    String settingLine(int plugs) {
+        StringBuilder result = new StringBuilder("*");
+        int[] fixed = new int[_available], moving = new int[_available];
+        result.append(' ')
+            .append(reflectorName(_random.nextInt(_available)));
+        for (int i = 1; i < _numRotors - _numPawls; i++) {
+            result.append(' ').append(fixedName(pick(fixed, i - 1)));
+        }
+        for (int i = 0; i < _numPawls; i++) {
+            result.append(' ').append(movingName(pick(moving, i)));
+        }
+        result.append(' ');
+        for (int i = 1; i < _numRotors; i++) {
+            result.append(randomChar());
+        }
+        int[] plugboard = shuffle();
+        for (int i = 0; i + 1 < Math.min(2 * plugs, plugboard.length);
+             i += 2) {
+            result.append(" (").append(_alphabet.charAt(plugboard[i]))
+                .append(_alphabet.charAt(plugboard[i + 1])).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a random message of LENGTH characters, in groups of five
+     *  separated by blanks and lines of at most LINE groups. */
+    String message(long length, int line) {
+        StringBuilder result = new StringBuilder();
+        try {
+            writeMessage(result, length, line);
+        } catch (IOException excp) {
+            throw new AssertionError("StringBuilder threw " + excp);
+        }
+        return result.toString();
+    }
+
+    /** Append to OUT a random message of LENGTH characters, formatted as
+     *  for message(LENGTH, LINE). */
+    void writeMessage(Appendable out, long length, int line)
+        throws IOException {
+        for (long i = 0; i < length; i++) {
+            if (i > 0 && i % (5L * line) == 0) {
+                out.append('\n');
+            } else if (i > 0 && i % 5 == 0) {
+                out.append(' ');
+            }
+            out.append(randomChar());
+        }
+        out.append('\n');
+    }
+
+    /** Return a random character of my alphabet. */
+    char randomChar() {
+        return _alphabet.charAt(_random.nextInt(_alphabet.length()));
+    }
+
+    /** Return the name of reflector #K. */
+    static String reflectorName(int k) {
+        return "R" + k;
+    }
+
+    /** Return the name of non-moving rotor #K. */
+    static String fixedName(int k) {
+        return "F" + k;
+    }
+
+    /** Return the name of moving rotor #K. */
+    static String movingName(int k) {
+        return "M" + k;
+    }
+
+    /** Return a random number from 0 to _available - 1 that is not among
+     *  the first N entries of USED, and record it as entry #N.  USED
+     *  must have at least _available entries. */
+    private int pick(int[] used, int n) {
+        while (true) {
+            int k = _random.nextInt(_available);
+            boolean fresh = true;
+            for (int i = 0; i < n; i++) {
+                fresh &= used[i] != k;
+            }
+            if (fresh) {
+                used[n] = k;
+                return k;
+            }
+        }
+    }
+
+    /** Return a random permutation of the indices of my alphabet. */
+    private int[] shuffle() {
+        int[] result = new int[_alphabet.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = i;
+        }
+        for (int i = result.length - 1; i > 0; i--) {
+            int j = _random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return a random permutation of the indices of my alphabet made of
+     *  2-cycles, with one fixed point if the alphabet size is odd. */
+    private int[] reflector() {
+        int[] order = shuffle();
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[order[i]] = order[i];
+        }
+        for (int i = 0; i + 1 < order.length; i += 2) {
+            result[order[i]] = order[i + 1];
+            result[order[i + 1]] = order[i];
+        }
+        return result;
+    }
+
+    /** Return from one to three random notches. */
+    private String notches() {
+        StringBuilder result = new StringBuilder();
+        for (int i = _random.nextInt(3); i >= 0; i--) {
+            char c = randomChar();
+            if (result.indexOf(String.valueOf(c)) < 0) {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return PERM, a permutation of the indices of my alphabet, in
+     *  cycle notation. */
+    private String cycles(int[] perm) {
+        StringBuilder result = new StringBuilder();
+        boolean[] done = new boolean[perm.length];
+        for (int i = 0; i < perm.length; i++) {
+            if (!done[i]) {
+                result.append(result.length() == 0 ? "(" : " (");
+                for (int j = i; !done[j]; j = perm[j]) {
+                    done[j] = true;
+                    result.append(_alphabet.charAt(j));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Number of plugboard pairs in generated setting lines. */
+    private static final int PLUGS = 10;
+
+    /** Number of five-character groups per generated message line. */
+    private static final int LINE_GROUPS = 12;
+
+    /** Size of output buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of randomness. */
+    private final Random _random;
+
+    /** Characters of my alphabet. */
+    private final String _alphabet;
+
+    /** Number of rotor slots and pawls of my machine. */
+    private final int _numRotors, _numPawls;
+
+    /** Number of rotors of each kind in my configuration. */
+    private final int _available;
+}
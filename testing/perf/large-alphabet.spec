@@ -0,0 +1,4 @@
+# A 200-character alphabet with six rotor slots: dominated by reading
+# the configuration and by table sizes.
+SEED=8 SIZE=200 ROTORS=6 PAWLS=4 AVAILABLE=8 SECTIONS=200 LENGTH=10000
+WALL_MS=6000 RSS_KB=105000 ALLOC_MB=330
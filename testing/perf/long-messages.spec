@@ -0,0 +1,4 @@
+# A few very long messages on a 26-letter, 5-slot machine: dominated by
+# converting characters.
+SEED=11 SIZE=26 ROTORS=5 PAWLS=3 AVAILABLE=8 SECTIONS=10 LENGTH=500000
+WALL_MS=2500 RSS_KB=65000 ALLOC_MB=10
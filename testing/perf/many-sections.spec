@@ -0,0 +1,4 @@
+# Many short messages on a 26-letter, 5-slot machine: dominated by
+# setting up the machine for each section.
+SEED=7 SIZE=26 ROTORS=5 PAWLS=3 AVAILABLE=8 SECTIONS=20000 LENGTH=100
+WALL_MS=4500 RSS_KB=130000 ALLOC_MB=420